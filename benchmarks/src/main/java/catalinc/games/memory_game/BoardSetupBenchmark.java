@@ -0,0 +1,53 @@
+package catalinc.games.memory_game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dealing a new board: filling it with pairs and shuffling them, as a new game does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardSetupBenchmark {
+
+    @Param({"5x4", "8x6", "24x16", "200x200"})
+    public String board;
+
+    private Grid   grid;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        grid = new Grid(Boards.rowsOf(board), Boards.colsOf(board), Boards.CANVAS_HEIGHT, Boards.CANVAS_WIDTH);
+        random = new Random(42);
+    }
+
+    @Benchmark
+    public Grid setupGrid() {
+        GameRules.setupGrid(grid, random);
+        return grid;
+    }
+
+    @Benchmark
+    public Grid newGrid() {
+        Grid fresh = new Grid(grid.getRows(), grid.getCols(), Boards.CANVAS_HEIGHT, Boards.CANVAS_WIDTH);
+        GameRules.setupGrid(fresh, random);
+        return fresh;
+    }
+}
@@ -0,0 +1,33 @@
+package catalinc.games.memory_game;
+
+import java.util.Random;
+
+/**
+ * Board sizes of the benchmarks, given as {@code rows x cols} parameters.
+ */
+final class Boards {
+
+    // portrait phone surface the boards are laid out on
+    static final int CANVAS_WIDTH  = 1080;
+    static final int CANVAS_HEIGHT = 1920;
+
+    private Boards() {
+    }
+
+    static int rowsOf(String board) {
+        return Integer.parseInt(board.substring(0, board.indexOf('x')));
+    }
+
+    static int colsOf(String board) {
+        return Integer.parseInt(board.substring(board.indexOf('x') + 1));
+    }
+
+    /**
+     * @return a shuffled board of the given size, the same for a given seed
+     */
+    static Grid newGrid(String board, long seed) {
+        Grid grid = new Grid(rowsOf(board), colsOf(board), CANVAS_HEIGHT, CANVAS_WIDTH);
+        GameRules.setupGrid(grid, new Random(seed));
+        return grid;
+    }
+}
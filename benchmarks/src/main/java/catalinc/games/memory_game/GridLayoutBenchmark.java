@@ -0,0 +1,123 @@
+package catalinc.games.memory_game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The packed {@link Grid} against the {@link TileArrayGrid} it replaced: building a board, scanning every tile the
+ * way a frame is drawn, and reading random tiles the way touches do.
+ * <p/>
+ * Run with {@code -prof gc}: the {@code gc.alloc.rate.norm} of the build benchmarks is the memory of one board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridLayoutBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"5x4", "24x16", "200x200"})
+    public String board;
+
+    private Grid          packed;
+    private TileArrayGrid objects;
+    private float[]       xs;
+    private float[]       ys;
+
+    @Setup
+    public void setUp() {
+        packed = Boards.newGrid(board, 42);
+        objects = TileArrayGrid.copyOf(packed, Boards.CANVAS_HEIGHT, Boards.CANVAS_WIDTH);
+        Random random = new Random(7);
+        xs = new float[POINTS];
+        ys = new float[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = random.nextFloat() * Boards.CANVAS_WIDTH;
+            ys[i] = random.nextFloat() * Boards.CANVAS_HEIGHT;
+        }
+    }
+
+    @Benchmark
+    public Grid buildPacked() {
+        Grid grid = new Grid(packed.getRows(), packed.getCols(), Boards.CANVAS_HEIGHT, Boards.CANVAS_WIDTH);
+        for (int i = 0; i < grid.size(); i++) {
+            grid.setTile(i, i / 2, Tile.STATE_HIDDEN);
+        }
+        return grid;
+    }
+
+    @Benchmark
+    public TileArrayGrid buildObjects() {
+        TileArrayGrid grid = new TileArrayGrid(packed.getRows(), packed.getCols(), Boards.CANVAS_HEIGHT,
+                                               Boards.CANVAS_WIDTH);
+        int cols = grid.getCols();
+        for (int i = 0; i < packed.size(); i++) {
+            grid.setTileAt(new Tile(i / 2, Tile.STATE_HIDDEN), i / cols, i % cols);
+        }
+        return grid;
+    }
+
+    @Benchmark
+    public int scanPacked() {
+        int sum = 0;
+        for (int i = 0; i < packed.size(); i++) {
+            if (packed.getState(i) != Tile.STATE_SOLVED) {
+                sum += packed.getColor(i) + packed.getAnimationSteps(i);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int scanObjects() {
+        int sum = 0;
+        for (int row = 0; row < objects.getRows(); row++) {
+            for (int col = 0; col < objects.getCols(); col++) {
+                Tile tile = objects.getTileAt(row, col);
+                if (tile.getState() != Tile.STATE_SOLVED) {
+                    sum += tile.getColor() + tile.getAnimationSteps();
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int touchPacked() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            int index = packed.indexAtPoint(xs[i], ys[i]);
+            if (index >= 0) {
+                sum += packed.getState(index);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int touchObjects() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            Tile tile = objects.getTileAtPoint(xs[i], ys[i]);
+            if (tile != null) {
+                sum += tile.getState();
+            }
+        }
+        return sum;
+    }
+}
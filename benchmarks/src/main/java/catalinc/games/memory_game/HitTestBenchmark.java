@@ -0,0 +1,56 @@
+package catalinc.games.memory_game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the touched tile. Touch points are random, over the whole board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HitTestBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"5x4", "24x16", "200x200"})
+    public String board;
+
+    private Grid    grid;
+    private float[] xs;
+    private float[] ys;
+    private int     next;
+
+    @Setup
+    public void setUp() {
+        grid = Boards.newGrid(board, 42);
+        Random random = new Random(7);
+        xs = new float[POINTS];
+        ys = new float[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = random.nextFloat() * grid.getWidth();
+            ys[i] = random.nextFloat() * grid.getHeight();
+        }
+    }
+
+    @Benchmark
+    public int indexAtPoint() {
+        int i = next++ & (POINTS - 1);
+        return grid.indexAtPoint(xs[i], ys[i]);
+    }
+}
@@ -0,0 +1,77 @@
+package catalinc.games.memory_game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves through {@link GameRules#select(Grid, int, int)}: solving a pair, two moves, and a mismatch, one move.
+ * <p/>
+ * Pairs are solved in color order; once the board is solved it is dealt again from a copy of its cells, a cost
+ * spread over all its pairs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PairResolutionBenchmark {
+
+    @Param({"5x4", "24x16", "200x200"})
+    public String board;
+
+    private Grid  grid;
+    private int[] dealt;
+    // the two tiles of every color
+    private int[] first;
+    private int[] second;
+    private int   nextPair;
+
+    @Setup
+    public void setUp() {
+        grid = Boards.newGrid(board, 42);
+        dealt = new int[grid.size()];
+        grid.copyCells(dealt, 0);
+        first = new int[grid.size() / 2];
+        second = new int[grid.size() / 2];
+        Arrays.fill(first, -1);
+        for (int i = 0; i < grid.size(); i++) {
+            int color = grid.getColor(i);
+            if (first[color] < 0) {
+                first[color] = i;
+            } else {
+                second[color] = i;
+            }
+        }
+    }
+
+    @Benchmark
+    public int solvePair() {
+        if (nextPair == first.length) {
+            grid.setCells(dealt, 0, -1);
+            nextPair = 0;
+        }
+        int pair = nextPair++;
+        GameRules.select(grid, first[pair], 0);
+        return GameRules.select(grid, second[pair], 0);
+    }
+
+    @Benchmark
+    public int mismatch() {
+        // the tile played last stays selected, so the other one is always a mismatch
+        int tile = grid.getSelectedIndex() == first[0] ? first[1] : first[0];
+        return GameRules.select(grid, tile, 0);
+    }
+}
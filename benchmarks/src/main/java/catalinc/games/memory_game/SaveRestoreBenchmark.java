@@ -0,0 +1,83 @@
+package catalinc.games.memory_game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and restoring a game half way through, the grid and the stop watch: with Java serialization, as
+ * {@code Bundle.putSerializable} used to, and with {@link GameStateCodec}, which replaced it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveRestoreBenchmark {
+
+    @Param({"5x4", "24x16", "200x200"})
+    public String board;
+
+    private Grid      grid;
+    private StopWatch stopWatch;
+    private byte[]    serialized;
+    private byte[]    encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        grid = Boards.newGrid(board, 42);
+        // solve every other pair, the way a game in progress looks
+        for (int i = 0; i < grid.size(); i++) {
+            if (grid.getColor(i) % 2 == 0) {
+                grid.setState(i, Tile.STATE_SOLVED);
+            }
+        }
+        stopWatch = new StopWatch(83 * 1000000000L, Clock.SYSTEM);
+        serialized = serialize();
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(grid);
+        out.writeObject(stopWatch);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        Grid restored = (Grid) in.readObject();
+        in.readObject();
+        return restored;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return GameStateCodec.encode(new GameSnapshot(1, grid.size() / 2, grid.size(), grid, stopWatch));
+    }
+
+    @Benchmark
+    public GameSnapshot decode() throws IOException {
+        return GameStateCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,61 @@
+package catalinc.games.memory_game;
+
+/**
+ * The board as it was before cells were packed into an {@code int[]}: a {@code Tile[][]} of heap objects, each with
+ * its color, state, fade steps, row and col. Kept only as the baseline of {@link GridLayoutBenchmark}.
+ */
+class TileArrayGrid {
+
+    private final int      rows;
+    private final int      cols;
+    private final Tile[][] data;
+
+    private final int tileHeight;
+    private final int tileWidth;
+
+    TileArrayGrid(int rows, int cols, int canvasHeight, int canvasWidth) {
+        this.rows = rows;
+        this.cols = cols;
+        this.data = new Tile[rows][cols];
+        this.tileHeight = canvasHeight / rows;
+        this.tileWidth = canvasWidth / cols;
+    }
+
+    /**
+     * @return a board with the same colors as {@code grid}
+     */
+    static TileArrayGrid copyOf(Grid grid, int canvasHeight, int canvasWidth) {
+        TileArrayGrid copy = new TileArrayGrid(grid.getRows(), grid.getCols(), canvasHeight, canvasWidth);
+        for (int i = 0; i < grid.size(); i++) {
+            copy.setTileAt(new Tile(grid.getColor(i), grid.getState(i)), grid.rowOf(i), grid.colOf(i));
+        }
+        return copy;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    Tile getTileAt(int row, int col) {
+        if ((row >= 0 && row < rows) && (col >= 0 && col < cols)) {
+            return data[row][col];
+        }
+        return null;
+    }
+
+    void setTileAt(Tile tile, int row, int col) {
+        tile.setRow(row);
+        tile.setCol(col);
+        data[row][col] = tile;
+    }
+
+    Tile getTileAtPoint(float x, float y) {
+        int row = (int) y / tileHeight;
+        int col = (int) x / tileWidth;
+        return getTileAt(row, col);
+    }
+}
@@ -0,0 +1,114 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrameExchangeTest {
+
+    private static final int  FRAMES         = 40000;
+    private static final int  CELLS          = 64;
+    // frames are published in bursts, more are skipped than on a real game loop
+    private static final int  BURST          = 4;
+    private static final long BURST_INTERVAL = 20000;
+
+    @Test
+    public void handsOverTheLatestFrame() {
+        FrameExchange frames = new FrameExchange();
+        assertFalse(frames.acquire());
+
+        frames.getBack().tickTime = 1;
+        frames.publish();
+        frames.getBack().tickTime = 2;
+        frames.publish();
+        assertTrue(frames.acquire());
+        assertEquals(2, frames.getFront().tickTime);
+        assertFalse(frames.acquire());
+        assertNotSame(frames.getFront(), frames.getBack());
+
+        Frame front = frames.getFront();
+        frames.getBack().tickTime = 3;
+        frames.publish();
+        assertSame(front, frames.getFront());
+        assertTrue(frames.acquire());
+        assertEquals(3, frames.getFront().tickTime);
+    }
+
+    /**
+     * The simulation publishes frames and wakes the renderer, as GameThread does, while the renderer draws them;
+     * neither may wait for the other, and the renderer must only ever see whole frames, newer than the previous one.
+     */
+    @Test
+    public void neitherSideWaitsNorSeesTornFrames() throws InterruptedException {
+        final FrameExchange frames = new FrameExchange();
+        final AtomicReference<String> error = new AtomicReference<String>();
+        final Histogram acquiring = new Histogram();
+        final int[] drawn = new int[1];
+        Thread renderer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long previous = 0;
+                while (previous < FRAMES) {
+                    long start = System.nanoTime();
+                    boolean fresh = frames.acquire();
+                    acquiring.record(System.nanoTime() - start);
+                    if (!fresh) {
+                        LockSupport.park(this);
+                        continue;
+                    }
+                    Frame frame = frames.getFront();
+                    if (frame.tickTime <= previous) {
+                        error.set("frame " + frame.tickTime + " after " + previous);
+                        return;
+                    }
+                    for (int i = 0; i < frame.size; i++) {
+                        if (frame.cells[i] != (int) frame.tickTime) {
+                            error.set("frame " + frame.tickTime + " torn at cell " + i);
+                            return;
+                        }
+                    }
+                    previous = frame.tickTime;
+                    drawn[0]++;
+                }
+            }
+        }, "renderer");
+        renderer.start();
+
+        Histogram publishing = new Histogram();
+        for (int f = 1; f <= FRAMES; f++) {
+            Frame frame = frames.getBack();
+            if (frame.cells.length < CELLS) {
+                frame.cells = new int[CELLS];
+            }
+            for (int i = 0; i < CELLS; i++) {
+                frame.cells[i] = f;
+            }
+            frame.size = CELLS;
+            frame.tickTime = f;
+            long start = System.nanoTime();
+            frames.publish();
+            publishing.record(System.nanoTime() - start);
+            LockSupport.unpark(renderer);
+            if (f % BURST == 0) {
+                LockSupport.parkNanos(BURST_INTERVAL);
+            }
+        }
+        renderer.join(10000);
+        assertFalse(renderer.isAlive());
+        assertNull(error.get());
+
+        System.out.println("publish: p99 " + publishing.getValueAtPercentile(99) + " ns, acquire: p99 "
+                           + acquiring.getValueAtPercentile(99) + " ns, " + drawn[0] + " of " + FRAMES + " drawn");
+        assertTrue(drawn[0] > 0);
+        assertTrue(publishing.getValueAtPercentile(99) < 100000);
+        assertTrue(acquiring.getValueAtPercentile(99) < 100000);
+    }
+}
@@ -0,0 +1,151 @@
+package catalinc.games.memory_game;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the simulation and render sides of the frame loop on one thread, the way GameThread and RenderThread share a
+ * frame, and checks that a steady-state frame allocates nothing: touches through the input queue, moves on the engine,
+ * animation ticks, the frame handed over through the exchange, the OpenGL mesh, frame pacing and metrics.
+ * <p/>
+ * This is the frame pipeline, not everything a move does on GameThread: each move there also encodes a small journal
+ * record for the snapshot store and updates the HUD and the move log, none of which is covered. The canvas blits need
+ * Android and are not covered either; their rectangles and paints are preallocated by the renderer.
+ */
+public class FrameLoopAllocationTest {
+
+    private static final int WIDTH        = 1080;
+    private static final int HEIGHT       = 1920;
+    private static final int FADE_TICKS   = 10;
+    private static final int WARM_UP      = 20000;
+    private static final int FRAMES       = 2000;
+    private static final long TICK_NANOS  = 50000000L;
+    private static final long FRAME_NANOS = 16666666L;
+
+    private static final TileFaces FACES = new TileFaces() {
+        @Override
+        public int getColor(int pair) {
+            return 0xff000000 | (pair * 0x2f4d5b & 0xffffff);
+        }
+
+        @Override
+        public int getGlyph(int pair) {
+            return pair % TileFaces.GLYPH_COUNT;
+        }
+    };
+
+    private com.sun.management.ThreadMXBean threads;
+
+    private GameEngine    engine;
+    private Camera        camera;
+    private InputQueue    input;
+    private FrameExchange frames;
+    private TileMesh      mesh;
+    private FramePacer    pacer;
+    private GameMetrics   metrics;
+    private ManualClock   clock;
+    private float[]       touches;
+    private int           frame;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        clock = new ManualClock();
+        engine = new GameEngine(new Random(1), clock, FADE_TICKS);
+        // larger than the screen, so the camera window is exercised too
+        engine.newGame(24, 16, 2);
+        Grid grid = engine.getGrid();
+        grid.setCanvasWidth(WIDTH);
+        grid.setCanvasHeight(HEIGHT);
+        camera = new Camera();
+        camera.setViewSize(WIDTH, HEIGHT);
+        camera.setBoardSize(grid.getWidth(), grid.getHeight());
+        camera.zoom(1.5f, WIDTH / 2, HEIGHT / 2);
+
+        input = new InputQueue(64);
+        frames = new FrameExchange();
+        mesh = new TileMesh(FACES, 0xff073642, 0xff002b36, FADE_TICKS);
+        pacer = new FramePacer(60);
+        metrics = new GameMetrics();
+
+        Random random = new Random(3);
+        touches = new float[2 * 1024];
+        for (int i = 0; i < touches.length; i += 2) {
+            touches[i] = random.nextInt(WIDTH);
+            touches[i + 1] = random.nextInt(HEIGHT);
+        }
+    }
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() {
+        for (int i = 0; i < WARM_UP; i++) {
+            runFrame();
+        }
+        long thread = Thread.currentThread().getId();
+        // the counter may allocate the first time round
+        threads.getThreadAllocatedBytes(thread);
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < FRAMES; i++) {
+            runFrame();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+        assertEquals("bytes allocated in " + FRAMES + " frames", 0, allocated);
+    }
+
+    private void runFrame() {
+        long frameStart = clock.nanoTime();
+
+        // UI thread: a touch every few frames
+        if (frame % 4 == 0) {
+            int t = (frame / 4 * 2) & (touches.length - 1);
+            input.offer(0, touches[t], touches[t + 1], frameStart);
+        }
+
+        // game thread: drain the input, tick and publish the frame
+        long updateStart = System.nanoTime();
+        metrics.applyGameReset();
+        Grid grid = engine.getGrid();
+        while (!input.isEmpty()) {
+            int index = grid.indexAtPoint(input.peekX(), input.peekY(), camera);
+            if (index >= 0) {
+                engine.select(index);
+            }
+            input.remove();
+        }
+        if (frame % 3 == 0) {
+            engine.tick();
+            Frame back = frames.getBack();
+            back.set(grid, camera, WIDTH, HEIGHT, frameStart / 1000000, frameStart / 1000000);
+            frames.publish();
+        }
+        metrics.getUpdateTime().record(System.nanoTime() - updateStart);
+
+        // render thread: pick up the latest frame, build the mesh and pace
+        metrics.applyRenderReset();
+        frames.acquire();
+        Frame front = frames.getFront();
+        float interpolation = (float) ((frameStart % TICK_NANOS) / (double) TICK_NANOS);
+        long drawStart = System.nanoTime();
+        mesh.build(front, interpolation);
+        long drawTime = System.nanoTime() - drawStart;
+        metrics.getDrawTime().record(drawTime);
+        clock.advance(FRAME_NANOS / 4);
+        clock.set(pacer.onFrame(frameStart, FRAME_NANOS / 4, clock.nanoTime()));
+        metrics.getFrameTime().record(clock.nanoTime() - frameStart);
+        metrics.setFrameRate(pacer.getFrameRate(), pacer.getQuality());
+        frame++;
+    }
+}
@@ -0,0 +1,111 @@
+package catalinc.games.memory_game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FramePacerTest {
+
+    private static final long MILLIS = 1000000L;
+
+    private FramePacer  pacer;
+    private ManualClock clock;
+
+    @Before
+    public void setUp() {
+        pacer = new FramePacer(120);
+        clock = new ManualClock();
+    }
+
+    @Test
+    public void keepsTheFastestRateForCheapFrames() {
+        double fps = run(5, 300);
+        assertEquals(120, pacer.getFrameRate());
+        assertEquals(FramePacer.QUALITY_FULL, pacer.getQuality());
+        assertEquals(120, fps, 1);
+    }
+
+    @Test
+    public void settlesAtTheRateTheFramesFit() {
+        run(12, 200);
+        assertEquals(60, pacer.getFrameRate());
+        assertEquals(60, run(12, 300), 1);
+        assertEquals(FramePacer.QUALITY_FULL, pacer.getQuality());
+    }
+
+    @Test
+    public void reducesTheQualityOnceAtTheSlowestRate() {
+        run(40, 300);
+        assertEquals(30, pacer.getFrameRate());
+        assertEquals(FramePacer.QUALITY_REDUCED, pacer.getQuality());
+        // too slow for 30 fps, but late frames only delay the next one
+        assertEquals(25, run(40, 100), 1);
+    }
+
+    @Test
+    public void recoversWhenFramesGetCheapAgain() {
+        run(40, 300);
+        run(3, 300);
+        assertEquals(FramePacer.QUALITY_FULL, pacer.getQuality());
+        run(3, 1000);
+        assertEquals(120, pacer.getFrameRate());
+        assertEquals(120, run(3, 300), 1);
+    }
+
+    @Test
+    public void toleratesSpikes() {
+        for (int i = 0; i < 20; i++) {
+            run(5, 50);
+            run(30, 1);
+        }
+        assertEquals(120, pacer.getFrameRate());
+    }
+
+    @Test
+    public void neverSchedulesFramesInThePast() {
+        long[] costs = {1, 5, 12, 40, 100, 3, 8};
+        for (int i = 0; i < 2000; i++) {
+            long start = clock.nanoTime();
+            long interval = pacer.getFrameInterval();
+            clock.advance(costs[i % costs.length] * MILLIS);
+            long next = pacer.onFrame(start, costs[i % costs.length] * MILLIS, clock.nanoTime());
+            assertTrue(next >= clock.nanoTime());
+            assertTrue(next >= start + interval);
+            clock.set(next);
+        }
+    }
+
+    @Test
+    public void capsTheRate() {
+        assertEquals(60, new FramePacer(90).getFrameRate());
+        assertEquals(30, new FramePacer(24).getFrameRate());
+
+        pacer.setPowerSaving(true);
+        run(1, 1);
+        assertEquals(30, pacer.getFrameRate());
+        pacer.setPowerSaving(false);
+        run(1, 1000);
+        assertEquals(120, pacer.getFrameRate());
+
+        pacer.setMaxRate(60);
+        run(1, 1);
+        assertEquals(60, pacer.getFrameRate());
+    }
+
+    /**
+     * Draws frames of a fixed cost, each starting when the pacer asks for it.
+     *
+     * @return frame rate achieved
+     */
+    private double run(long costMillis, int frames) {
+        long begin = clock.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            long start = clock.nanoTime();
+            clock.advance(costMillis * MILLIS);
+            clock.set(pacer.onFrame(start, costMillis * MILLIS, clock.nanoTime()));
+        }
+        return frames * 1e9 / (clock.nanoTime() - begin);
+    }
+}
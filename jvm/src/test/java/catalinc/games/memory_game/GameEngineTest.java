@@ -0,0 +1,134 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Plays the same seeds and moves on separate engines, which must end up in the same state, and checks that only
+ * boards that can be filled with pairs are dealt.
+ */
+public class GameEngineTest {
+
+    private static final int FADE_TICKS = 10;
+
+    @Test
+    public void sameSeedAndMovesGiveTheSameGame() {
+        for (long seed = 1; seed <= 20; seed++) {
+            ManualClock firstClock = new ManualClock();
+            ManualClock secondClock = new ManualClock();
+            GameEngine first = new GameEngine(new Random(), firstClock, FADE_TICKS);
+            GameEngine second = new GameEngine(new Random(), secondClock, FADE_TICKS);
+            first.newGame(6, 5, seed);
+            second.newGame(6, 5, seed);
+            assertSameGame(first, second);
+
+            Random moves = new Random(seed);
+            while (!first.isOver()) {
+                int tile = moves.nextInt(first.getGrid().size());
+                assertEquals(first.select(tile), second.select(tile));
+                for (int ticks = moves.nextInt(3); ticks > 0; ticks--) {
+                    assertEquals(first.tick(), second.tick());
+                }
+                firstClock.advance(1000000);
+                secondClock.advance(1000000);
+                assertSameGame(first, second);
+            }
+            assertTrue(second.isOver());
+        }
+    }
+
+    @Test
+    public void sameRandomDealsTheSameBoards() {
+        GameEngine first = new GameEngine(new Random(3), new ManualClock(), FADE_TICKS);
+        GameEngine second = new GameEngine(new Random(3), new ManualClock(), FADE_TICKS);
+        for (int game = 0; game < 5; game++) {
+            first.newGame(4, 4);
+            second.newGame(4, 4);
+            assertEquals(first.getSeed(), second.getSeed());
+            assertSameGame(first, second);
+        }
+    }
+
+    @Test
+    public void solvedTilesFadeForTheirTicksOnly() {
+        GameEngine engine = new GameEngine(new Random(), new ManualClock(), FADE_TICKS);
+        engine.newGame(4, 4, 5);
+        Grid grid = engine.getGrid();
+        int second = 1;
+        while (grid.getColor(second) != grid.getColor(0)) {
+            second++;
+        }
+        engine.select(0);
+        assertEquals(GameRules.MOVE_PAIR, engine.select(second));
+
+        for (int tick = 1; tick < FADE_TICKS; tick++) {
+            assertTrue(engine.tick());
+            assertEquals(FADE_TICKS - tick, grid.getAnimationSteps(0));
+            assertEquals(FADE_TICKS - tick, grid.getAnimationSteps(second));
+        }
+        assertFalse(engine.tick());
+        assertEquals(0, grid.getAnimationSteps(0));
+        assertEquals(0, grid.getAnimationSteps(second));
+        assertFalse(grid.isAnimating());
+        assertFalse(engine.tick());
+    }
+
+    @Test
+    public void restoredFadesKeepFading() {
+        GameEngine engine = new GameEngine(new Random(), new ManualClock(), FADE_TICKS);
+        Grid grid = new Grid(2, 2, 0, 0);
+        GameRules.setupGrid(grid, new Random(6));
+        grid.setState(0, Tile.STATE_SOLVED);
+        grid.setAnimationSteps(0, 2);
+        engine.restore(grid, 0, 0, new StopWatch(0, engine.getClock()));
+
+        assertTrue(engine.tick());
+        assertFalse(engine.tick());
+        assertEquals(0, grid.getAnimationSteps(0));
+    }
+
+    @Test
+    public void rejectsBoardsThatCannotBeFilledWithPairs() {
+        GameEngine engine = new GameEngine(new Random(), new ManualClock(), FADE_TICKS);
+        assertRejected(engine, 3, 3);
+        assertRejected(engine, 0, 4);
+        assertRejected(engine, 4, 0);
+        assertRejected(engine, -2, 2);
+        assertRejected(engine, Grid.MAX_TILES, 2);
+        // the product overflows an int to 0
+        assertRejected(engine, 65536, 65536);
+        engine.newGame(1, 2);
+        assertEquals(2, engine.getGrid().size());
+    }
+
+    private static void assertRejected(GameEngine engine, int rows, int cols) {
+        try {
+            engine.newGame(rows, cols, 1);
+            fail(rows + "x" + cols);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void assertSameGame(GameEngine expected, GameEngine actual) {
+        assertEquals(expected.getMoves(), actual.getMoves());
+        assertEquals(expected.getSolved(), actual.getSolved());
+        assertEquals(expected.getStopWatch().elapsed(), actual.getStopWatch().elapsed());
+        Grid expectedGrid = expected.getGrid();
+        Grid actualGrid = actual.getGrid();
+        assertEquals(expectedGrid.getSelectedIndex(), actualGrid.getSelectedIndex());
+        int[] expectedCells = new int[expectedGrid.size()];
+        int[] actualCells = new int[actualGrid.size()];
+        expectedGrid.copyCells(expectedCells, 0);
+        actualGrid.copyCells(actualCells, 0);
+        for (int i = 0; i < expectedCells.length; i++) {
+            assertEquals("tile " + i, expectedCells[i], actualCells[i]);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a requested reset is left to the threads writing the metrics, each clearing only its own.
+ */
+public class GameMetricsTest {
+
+    @Test
+    public void eachThreadClearsOnlyItsOwnMetrics() {
+        GameMetrics metrics = new GameMetrics();
+        record(metrics);
+
+        metrics.requestReset();
+        // nothing is cleared behind the writers' backs
+        assertEquals(1, metrics.getUpdateTime().getCount());
+        assertEquals(1, metrics.getFrameTime().getCount());
+
+        metrics.applyGameReset();
+        assertEquals(0, metrics.getUpdateTime().getCount());
+        assertEquals(0, metrics.getLateTicks());
+        assertEquals(0, metrics.getDroppedTicks());
+        assertEquals(0, metrics.getDroppedTouches());
+        assertEquals(1, metrics.getFrameTime().getCount());
+
+        metrics.applyRenderReset();
+        assertEquals(0, metrics.getFrameTime().getCount());
+        assertEquals(0, metrics.getLockWaitTime().getCount());
+        assertEquals(0, metrics.getDrawTime().getCount());
+        assertEquals(0, metrics.getInputLatency().getCount());
+    }
+
+    @Test
+    public void aResetIsAppliedOnce() {
+        GameMetrics metrics = new GameMetrics();
+        metrics.requestReset();
+        metrics.applyGameReset();
+        metrics.applyRenderReset();
+
+        record(metrics);
+        metrics.applyGameReset();
+        metrics.applyRenderReset();
+        assertEquals(1, metrics.getUpdateTime().getCount());
+        assertEquals(1, metrics.getFrameTime().getCount());
+        assertEquals(3, metrics.getDroppedTouches());
+    }
+
+    private static void record(GameMetrics metrics) {
+        metrics.getUpdateTime().record(1000);
+        metrics.addLateTicks(1);
+        metrics.addDroppedTicks(2);
+        metrics.addDroppedTouches(3);
+        metrics.getFrameTime().record(16000000);
+        metrics.getLockWaitTime().record(1000);
+        metrics.getDrawTime().record(1000);
+        metrics.getInputLatency().record(1000);
+    }
+}
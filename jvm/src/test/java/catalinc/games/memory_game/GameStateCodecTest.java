@@ -0,0 +1,197 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GameStateCodecTest {
+
+    private static final int[][] BOARDS = {{5, 4}, {24, 16}, {200, 200}};
+
+    @Test
+    public void roundTripsGamesInProgress() throws IOException {
+        for (int[] board : BOARDS) {
+            GameSnapshot snapshot = playedSnapshot(board[0], board[1], 1);
+            assertSameGame(snapshot, GameStateCodec.decode(GameStateCodec.encode(snapshot)));
+        }
+    }
+
+    @Test
+    public void roundTripsFreshAndSolvedBoards() throws IOException {
+        Grid fresh = newGrid(6, 6, 2);
+        GameSnapshot ready = new GameSnapshot(0, 0, 0, fresh, new StopWatch(0, Clock.SYSTEM));
+        assertSameGame(ready, GameStateCodec.decode(GameStateCodec.encode(ready)));
+
+        Grid solved = newGrid(6, 6, 3);
+        for (int i = 0; i < solved.size(); i++) {
+            solved.setState(i, Tile.STATE_SOLVED);
+        }
+        GameSnapshot over = new GameSnapshot(3, 36, 50, solved, new StopWatch(61000000000L, Clock.SYSTEM));
+        assertSameGame(over, GameStateCodec.decode(GameStateCodec.encode(over)));
+    }
+
+    @Test
+    public void decodedStopWatchesArePaused() throws IOException {
+        ManualClock clock = new ManualClock();
+        StopWatch running = new StopWatch(clock);
+        running.start();
+        clock.advance(5000000000L);
+        GameSnapshot snapshot = new GameSnapshot(1, 0, 0, newGrid(5, 4, 4), running);
+
+        StopWatch decoded = GameStateCodec.decode(GameStateCodec.encode(snapshot)).getStopWatch();
+        assertFalse(decoded.isRunning());
+        assertEquals(5000, decoded.elapsed());
+    }
+
+    @Test
+    public void takesAFewBytesPerTile() {
+        // colors below 128 take one byte, the states a quarter
+        GameSnapshot small = playedSnapshot(16, 16, 5);
+        assertTrue(GameStateCodec.encode(small).length <= 32 + small.getGrid().size() * 5 / 4);
+        for (int[] board : BOARDS) {
+            GameSnapshot snapshot = playedSnapshot(board[0], board[1], 5);
+            int size = snapshot.getGrid().size();
+            assertTrue(GameStateCodec.encode(snapshot).length <= 32 + size * 13 / 4);
+        }
+    }
+
+    @Test
+    public void appliesDeltas() throws IOException {
+        Grid grid = newGrid(8, 6, 6);
+        byte[] base = GameStateCodec.encode(new GameSnapshot(1, 0, 0, grid.copy(), new StopWatch(0, Clock.SYSTEM)));
+        Grid decoded = GameStateCodec.decode(base).getGrid();
+
+        Random random = new Random(7);
+        int solved = 0;
+        int moves = 0;
+        for (int m = 0; m < 300; m++) {
+            int selected = grid.getSelectedIndex();
+            int index = random.nextInt(grid.size());
+            int move = GameRules.select(grid, index, 0);
+            if (move == GameRules.MOVE_IGNORED) {
+                continue;
+            }
+            moves++;
+            if (move == GameRules.MOVE_PAIR) {
+                solved += 2;
+            }
+            int[] changed = selected >= 0 ? new int[]{index, selected} : new int[]{index};
+            GameSnapshot snapshot = new GameSnapshot(1, solved, moves, grid.copy(),
+                                                     new StopWatch(m * 1000000L, Clock.SYSTEM));
+            byte[] delta = GameStateCodec.encodeDelta(snapshot, changed, changed.length);
+            assertSameGame(snapshot, GameStateCodec.applyDelta(delta, decoded));
+        }
+    }
+
+    @Test
+    public void rejectsUnknownVersions() {
+        byte[] data = GameStateCodec.encode(playedSnapshot(5, 4, 9));
+        data[0] = (byte) (GameStateCodec.VERSION + 1);
+        assertCorrupt(data);
+        data[0] = 0;
+        assertCorrupt(data);
+    }
+
+    @Test
+    public void rejectsImpossibleBoards() {
+        // version, state, solved, moves, then rows and cols: -1 by -1, 65534 by 65534 and 0 by 4
+        assertCorrupt(new byte[]{GameStateCodec.VERSION, 1, 0, 0, -1, -1, -1, -1, 15, -1, -1, -1, -1, 15, 0});
+        assertCorrupt(new byte[]{GameStateCodec.VERSION, 1, 0, 0, -2, -1, 3, -2, -1, 3, 0});
+        assertCorrupt(new byte[]{GameStateCodec.VERSION, 1, 0, 0, 0, 4, 0});
+    }
+
+    @Test
+    public void rejectsCorruptDataWithIOExceptionOnly() {
+        Random random = new Random(11);
+        for (int[] board : BOARDS) {
+            GameSnapshot snapshot = playedSnapshot(board[0], board[1], 10);
+            byte[] data = GameStateCodec.encode(snapshot);
+            for (int run = 0; run < 2000; run++) {
+                byte[] corrupt = data.clone();
+                for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                    // the header and the first colors, where sizes and indices are
+                    corrupt[random.nextInt(Math.min(corrupt.length, 40))] = (byte) random.nextInt(256);
+                }
+                if (random.nextInt(4) == 0) {
+                    corrupt = Arrays.copyOf(corrupt, random.nextInt(corrupt.length));
+                }
+                try {
+                    GameStateCodec.decode(corrupt);
+                } catch (IOException e) {
+                    // expected for most
+                }
+                try {
+                    GameStateCodec.applyDelta(corrupt, snapshot.getGrid().copy());
+                } catch (IOException e) {
+                    // expected for most
+                }
+            }
+        }
+    }
+
+    private static GameSnapshot playedSnapshot(int rows, int cols, long seed) {
+        Grid grid = newGrid(rows, cols, seed);
+        Random random = new Random(seed);
+        int solved = 0;
+        int moves = 0;
+        // about half the board, ending with a tile selected
+        for (int m = 0; m < grid.size(); m++) {
+            int move = GameRules.select(grid, random.nextInt(grid.size()), 0);
+            if (move != GameRules.MOVE_IGNORED) {
+                moves++;
+            }
+            if (move == GameRules.MOVE_PAIR) {
+                solved += 2;
+            }
+        }
+        if (grid.getSelectedIndex() < 0) {
+            for (int i = 0; i < grid.size() && grid.getSelectedIndex() < 0; i++) {
+                if (GameRules.select(grid, i, 0) != GameRules.MOVE_IGNORED) {
+                    moves++;
+                }
+            }
+        }
+        return new GameSnapshot(1, solved, moves, grid, new StopWatch(seed * 1234567L, Clock.SYSTEM));
+    }
+
+    private static Grid newGrid(int rows, int cols, long seed) {
+        Grid grid = new Grid(rows, cols, 0, 0);
+        GameRules.setupGrid(grid, new Random(seed));
+        return grid;
+    }
+
+    private static int[] cells(Grid grid) {
+        int[] cells = new int[grid.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = grid.getColor(i) << 2 | grid.getState(i);
+        }
+        return cells;
+    }
+
+    private static void assertSameGame(GameSnapshot expected, GameSnapshot actual) {
+        assertEquals(expected.getState(), actual.getState());
+        assertEquals(expected.getSolved(), actual.getSolved());
+        assertEquals(expected.getMoves(), actual.getMoves());
+        assertEquals(expected.getGrid().getRows(), actual.getGrid().getRows());
+        assertEquals(expected.getGrid().getCols(), actual.getGrid().getCols());
+        assertEquals(expected.getGrid().getSelectedIndex(), actual.getGrid().getSelectedIndex());
+        assertTrue(Arrays.equals(cells(expected.getGrid()), cells(actual.getGrid())));
+        assertEquals(expected.getStopWatch().elapsedNanos(), actual.getStopWatch().elapsedNanos());
+    }
+
+    private static void assertCorrupt(byte[] data) {
+        try {
+            GameStateCodec.decode(data);
+            fail("decoded corrupt data");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
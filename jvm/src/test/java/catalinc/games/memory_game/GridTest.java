@@ -0,0 +1,85 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the board knows whether anything is animating, which the game thread parks on, whichever way the
+ * cells were written.
+ */
+public class GridTest {
+
+    @Test
+    public void aPairStartsAFadeWithoutATick() {
+        Grid grid = new Grid(2, 2, 0, 0);
+        GameRules.setupGrid(grid, new Random(1));
+        assertFalse(grid.isAnimating());
+
+        int first = 0;
+        int second = 1;
+        while (grid.getColor(second) != grid.getColor(first)) {
+            second++;
+        }
+        GameRules.select(grid, first, 3);
+        assertFalse(grid.isAnimating());
+        assertEquals(GameRules.MOVE_PAIR, GameRules.select(grid, second, 3));
+        assertTrue(grid.isAnimating());
+
+        grid.setAnimationSteps(first, 0);
+        assertTrue(grid.isAnimating());
+        grid.setAnimationSteps(second, 1);
+        assertTrue(grid.isAnimating());
+        grid.setAnimationSteps(second, 0);
+        assertFalse(grid.isAnimating());
+    }
+
+    @Test
+    public void countsAnimatingCellsThroughEveryWrite() {
+        Random random = new Random(2);
+        Grid grid = new Grid(6, 6, 0, 0);
+        for (int n = 0; n < 10000; n++) {
+            int index = random.nextInt(grid.size());
+            switch (random.nextInt(3)) {
+                case 0:
+                    grid.setTile(index, index / 2, Tile.STATE_SOLVED);
+                    break;
+                case 1:
+                case 2:
+                    grid.setAnimationSteps(index, random.nextInt(3));
+                    break;
+            }
+            assertEquals(countAnimating(grid) > 0, grid.isAnimating());
+        }
+
+        grid.setAnimationSteps(0, 5);
+        int[] cells = new int[grid.size()];
+        grid.copyCells(cells, 0);
+        Grid copy = grid.copy();
+        Grid restored = new Grid(6, 6, 0, 0);
+        restored.setCells(cells, 0, -1);
+        assertTrue(copy.isAnimating());
+        assertTrue(restored.isAnimating());
+        for (int i = 0; i < grid.size(); i++) {
+            copy.setAnimationSteps(i, 0);
+            restored.setAnimationSteps(i, 0);
+        }
+        assertFalse(copy.isAnimating());
+        assertFalse(restored.isAnimating());
+        assertTrue(grid.isAnimating());
+    }
+
+    private static int countAnimating(Grid grid) {
+        int count = 0;
+        for (int i = 0; i < grid.size(); i++) {
+            if (grid.getAnimationSteps(i) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,109 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InputQueueTest {
+
+    private static final int  RECORDS        = 40000;
+    private static final int  BURST          = 8;
+    private static final long BURST_INTERVAL = 20000;
+
+    @Test
+    public void keepsRecordsInOrderAndDropsWhenFull() {
+        InputQueue queue = new InputQueue(4);
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i < 4, queue.offer(i, i * 10, i * 100, i * 1000L));
+        }
+        assertEquals(2, queue.getDropped());
+        for (int i = 0; i < 4; i++) {
+            assertFalse(queue.isEmpty());
+            assertEquals(i, queue.peekKind());
+            assertEquals(i * 10, queue.peekX(), 0);
+            assertEquals(i * 100, queue.peekY(), 0);
+            assertEquals(i * 1000L, queue.peekTime());
+            queue.remove();
+        }
+        assertTrue(queue.isEmpty());
+
+        queue.offer(1, 0, 0, 0);
+        queue.offer(2, 0, 0, 0);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(3, 0, 0, 0));
+        assertEquals(3, queue.peekKind());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacitiesThatAreNotPowersOfTwo() {
+        new InputQueue(24);
+    }
+
+    /**
+     * The UI thread posts bursts of touches and wakes the game thread, as GameThread.onTouch does, while the game
+     * thread drains them; posting must never wait for the game thread.
+     */
+    @Test
+    public void producerNeverWaitsForTheConsumer() throws InterruptedException {
+        final InputQueue queue = new InputQueue(64);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        final int[] received = new int[1];
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long expected = 0;
+                while (expected <= RECORDS) {
+                    if (queue.isEmpty()) {
+                        LockSupport.park(this);
+                        continue;
+                    }
+                    long time = queue.peekTime();
+                    if (time < expected || queue.peekX() != (float) (time & 0xffff)) {
+                        error.set("record " + time + " out of order or torn, expected at least " + expected);
+                        return;
+                    }
+                    expected = time + 1;
+                    received[0]++;
+                    queue.remove();
+                }
+            }
+        }, "consumer");
+        consumer.start();
+
+        Histogram blocking = new Histogram();
+        for (long i = 0; i < RECORDS; i++) {
+            long start = System.nanoTime();
+            queue.offer(1, i & 0xffff, 0, i);
+            blocking.record(System.nanoTime() - start);
+            if (i % BURST == BURST - 1) {
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(BURST_INTERVAL);
+            }
+        }
+        int dropped = queue.getDropped();
+        // lets the consumer finish if the last records were dropped
+        while (!queue.offer(1, RECORDS & 0xffff, 0, RECORDS)) {
+            LockSupport.unpark(consumer);
+            Thread.yield();
+        }
+        LockSupport.unpark(consumer);
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        assertNull(error.get());
+        assertEquals(RECORDS + 1, received[0] + dropped);
+
+        // a monitor held by the game thread would cost up to a whole tick instead
+        long p99 = blocking.getValueAtPercentile(99);
+        System.out.println("offer: p50 " + blocking.getValueAtPercentile(50) + " ns, p99 " + p99 + " ns, max "
+                           + blocking.getMax() + " ns, dropped " + dropped);
+        assertTrue("p99 offer took " + p99 + " ns", p99 < 100000);
+    }
+}
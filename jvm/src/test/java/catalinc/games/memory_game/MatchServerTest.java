@@ -0,0 +1,162 @@
+package catalinc.games.memory_game;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Pairs two clients on a server over loopback and plays a match through the protocol, each player seeing every
+ * move in the order the server accepted it.
+ */
+public class MatchServerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private MatchServer       server;
+    private List<MatchClient> clients;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MatchServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        server.start();
+        clients = new ArrayList<MatchClient>();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        for (MatchClient client : clients) {
+            client.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void playsAMatchToTheEnd() throws InterruptedException {
+        Player[] players = pair(1, 2);
+
+        players[0].client.sendMove(0);
+        players[0].client.sendMove(1);
+        for (Player player : players) {
+            String[] first = player.next().split(" ");
+            String[] second = player.next().split(" ");
+            assertEquals("reveal", first[0]);
+            assertEquals("0", first[1]);
+            assertEquals("reveal", second[0]);
+            assertEquals("1", second[1]);
+            // a board of one pair
+            assertEquals(first[2], second[2]);
+            assertEquals("end 1 0 -1", player.next());
+        }
+        assertEquals(2, server.getMoves());
+    }
+
+    @Test
+    public void ignoresMovesOutOfRangeAndOutOfTurn() throws InterruptedException {
+        Player[] players = pair(1, 2);
+
+        // out of range, then a move that is played; the server reads a connection in order
+        players[0].client.sendMove(2);
+        players[0].client.sendMove(-1);
+        players[0].client.sendMove(0);
+        for (Player player : players) {
+            String[] reveal = player.next().split(" ");
+            assertEquals("reveal 0", reveal[0] + " " + reveal[1]);
+        }
+        // still seat 0 to move; the join that follows is refused and drops seat 1 once its move was read
+        players[1].client.sendMove(1);
+        players[1].client.sendJoin(0, 0);
+
+        assertEquals("end 0 0 1", players[0].next());
+        assertEquals("disconnected", players[1].next());
+        assertEquals(1, server.getMoves());
+    }
+
+    @Test
+    public void leavingForfeitsTheMatch() throws InterruptedException {
+        Player[] players = pair(2, 2);
+
+        players[0].client.sendMove(3);
+        for (Player player : players) {
+            String[] reveal = player.next().split(" ");
+            assertEquals("reveal 3", reveal[0] + " " + reveal[1]);
+        }
+        players[0].client.close();
+
+        assertEquals("disconnected", players[0].next());
+        assertEquals("end 0 0 0", players[1].next());
+    }
+
+    /**
+     * @return the two players, by seat
+     */
+    private Player[] pair(int rows, int cols) throws InterruptedException {
+        Player[] joined = new Player[]{connect(rows, cols), connect(rows, cols)};
+        Player[] players = new Player[Match.SEATS];
+        for (Player player : joined) {
+            String[] start = player.next().split(" ");
+            assertEquals("start", start[0]);
+            assertEquals(rows + " " + cols, start[1] + " " + start[2]);
+            players[Integer.parseInt(start[3])] = player;
+        }
+        assertNotNull("seat 0", players[0]);
+        assertNotNull("seat 1", players[1]);
+        assertEquals(1, server.getMatchesStarted());
+        return players;
+    }
+
+    private Player connect(int rows, int cols) {
+        Player player = new Player();
+        player.client = new MatchClient("127.0.0.1", server.getPort(), rows, cols, player);
+        clients.add(player.client);
+        player.client.start();
+        return player;
+    }
+
+    /**
+     * Records what the server tells one client, as text.
+     */
+    private static class Player implements MatchClient.Listener {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        MatchClient client;
+
+        String next() throws InterruptedException {
+            String event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull("no message from the server", event);
+            return event;
+        }
+
+        @Override
+        public void onStart(int rows, int cols, int seat) {
+            events.add("start " + rows + " " + cols + " " + seat);
+        }
+
+        @Override
+        public void onReveal(int tile, int color) {
+            events.add("reveal " + tile + " " + color);
+        }
+
+        @Override
+        public void onEnd(int score0, int score1, int forfeit) {
+            events.add("end " + score0 + " " + score1 + " " + forfeit);
+        }
+
+        @Override
+        public void onDisconnected() {
+            events.add("disconnected");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks seeking against replaying the recorded moves from a freshly dealt board.
+ */
+public class MoveLogTest {
+
+    private static final int FADE_TICKS = 10;
+
+    @Test
+    public void seekMatchesReplayingFromTheStartOnASmallBoard() {
+        assertSeekMatchesReplay(4, 4, 1);
+    }
+
+    @Test
+    public void seekMatchesReplayingFromTheStartOnALargeBoard() {
+        // more tiles than the minimum interval, so the interval follows the board
+        assertSeekMatchesReplay(12, 8, 2);
+    }
+
+    @Test
+    public void keyframeIntervalGrowsWithTheBoard() {
+        MoveLog log = new MoveLog();
+        log.start(4, 4, 1);
+        assertEquals(MoveLog.MIN_KEYFRAME_INTERVAL, log.getKeyframeInterval());
+        // the largest board, sized in linear room
+        log.start(512, 256, 1);
+        assertEquals(Grid.MAX_TILES, log.getKeyframeInterval());
+    }
+
+    private static void assertSeekMatchesReplay(int rows, int cols, long seed) {
+        ManualClock clock = new ManualClock();
+        GameEngine engine = new GameEngine(new Random(seed), clock, FADE_TICKS);
+        engine.newGame(rows, cols, seed);
+        MoveLog log = new MoveLog();
+        log.start(rows, cols, seed);
+
+        Random random = new Random(seed);
+        Grid grid = engine.getGrid();
+        while (!engine.isOver()) {
+            int tile = random.nextInt(grid.size());
+            int move = engine.select(tile);
+            clock.advance(1000000);
+            log.record(grid, tile, move, engine.getStopWatch().elapsed());
+            engine.tick();
+        }
+        int count = log.getMoveCount();
+        assertTrue("too few moves for a keyframe: " + count, count > 2 * log.getKeyframeInterval());
+
+        GameEngine seeker = new GameEngine(new Random(), clock, FADE_TICKS);
+        GameEngine player = new GameEngine(new Random(), clock, FADE_TICKS);
+        for (int n = 0; n <= count; n += 1 + random.nextInt(7)) {
+            seekAndCompare(log, seeker, player, n);
+        }
+        seekAndCompare(log, seeker, player, count);
+        // and backwards
+        seekAndCompare(log, seeker, player, count / 3);
+    }
+
+    private static void seekAndCompare(MoveLog log, GameEngine seeker, GameEngine player, int n) {
+        log.seek(seeker, n);
+        player.newGame(log.getRows(), log.getCols(), log.getSeed());
+        for (int i = 0; i < n; i++) {
+            player.select(log.getTile(i));
+        }
+
+        String at = "after " + n + " moves";
+        assertEquals(at, player.getMoves(), seeker.getMoves());
+        assertEquals(at, player.getSolved(), seeker.getSolved());
+        Grid expected = player.getGrid();
+        Grid actual = seeker.getGrid();
+        assertEquals(at, expected.getSelectedIndex(), actual.getSelectedIndex());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(at + ", tile " + i, expected.getColor(i), actual.getColor(i));
+            assertEquals(at + ", tile " + i, expected.getState(i), actual.getState(i));
+        }
+        assertEquals(at, n > 0 ? log.getElapsedMillis(n - 1) : 0, seeker.getStopWatch().elapsed());
+    }
+}
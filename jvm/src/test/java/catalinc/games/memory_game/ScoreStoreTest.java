@@ -0,0 +1,283 @@
+package catalinc.games.memory_game;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScoreStoreTest {
+
+    private static final int  HEADER_SIZE = 8;
+    private static final int  RECORD_SIZE = 24;
+    private static final long TIMEOUT     = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File       directory;
+    private ScoreStore store;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot();
+        store = open();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void ranksFastestFirstThenFewerMovesThenEarlierGames() {
+        store.add(new Score(5, 4, 1, 30000, 20));
+        store.add(new Score(5, 4, 2, 20000, 25));
+        store.add(new Score(5, 4, 3, 20000, 15));
+        store.add(new Score(5, 4, 4, 20000, 15));
+        store.add(new Score(6, 6, 5, 1000, 10));
+
+        List<Score> top = store.getTop(5, 4, 10);
+        assertEquals(4, top.size());
+        assertEquals(3, top.get(0).getDate());
+        assertEquals(4, top.get(1).getDate());
+        assertEquals(2, top.get(2).getDate());
+        assertEquals(1, top.get(3).getDate());
+        assertEquals(2, store.getTop(5, 4, 2).size());
+        assertEquals(4, store.getCount(5, 4));
+        assertEquals(1, store.getCount(6, 6));
+        assertEquals(0, store.getCount(4, 4));
+    }
+
+    @Test
+    public void answersRanksAndPercentiles() {
+        for (int i = 0; i < 100; i++) {
+            store.add(new Score(5, 4, i, (i + 1) * 1000, 10));
+        }
+        assertEquals(0, store.getRank(5, 4, 1000, 10));
+        assertEquals(1, store.getRank(5, 4, 1000, 11));
+        assertEquals(50, store.getRank(5, 4, 50500, 0));
+        assertEquals(100, store.getRank(5, 4, 200000, 0));
+        assertEquals(1000, store.getElapsedAtPercentile(5, 4, 0));
+        assertEquals(50000, store.getElapsedAtPercentile(5, 4, 50));
+        assertEquals(100000, store.getElapsedAtPercentile(5, 4, 100));
+        assertEquals(-1, store.getElapsedAtPercentile(4, 4, 50));
+    }
+
+    @Test
+    public void findsTheBestGamesSinceADate() {
+        List<Score> added = addRandomScores(store, 3000, 1);
+
+        Random random = new Random(2);
+        for (int q = 0; q < 200; q++) {
+            // from a few recent games, ranked on their own, to most of them, found by walking the ranking
+            long since = q % 2 == 0 ? 3000 - random.nextInt(40) : random.nextInt(3000);
+            int n = 1 + random.nextInt(20);
+            assertSameScores(bruteForceTop(added, n, since), store.getTop(5, 4, n, since));
+        }
+        assertEquals(0, store.getTop(5, 4, 10, 5000).size());
+        assertEquals(0, store.getTop(5, 4, 0, 0).size());
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws Exception {
+        List<Score> added = addRandomScores(store, 1000, 3);
+        closeAndWaitForFile(added.size());
+
+        store = open();
+        assertEquals(added.size(), store.getCount(5, 4));
+        assertSameScores(bruteForceTop(added, 50, Long.MIN_VALUE), store.getTop(5, 4, 50));
+        assertSameScores(bruteForceTop(added, 10, 900), store.getTop(5, 4, 10, 900));
+
+        // added after a reload, ranked among the loaded ones
+        Score best = new Score(5, 4, 2000, 0, 0);
+        store.add(best);
+        added.add(best);
+        assertSameScores(bruteForceTop(added, 5, Long.MIN_VALUE), store.getTop(5, 4, 5));
+    }
+
+    @Test
+    public void skipsCorruptRecordsAndIgnoresATornLastOne() throws Exception {
+        List<Score> added = addRandomScores(store, 10, 4);
+        closeAndWaitForFile(added.size());
+
+        File file = new File(directory, "scores.dat");
+        RandomAccessFile data = new RandomAccessFile(file, "rw");
+        try {
+            // the elapsed time of the fourth record
+            long offset = HEADER_SIZE + 3 * RECORD_SIZE + 12;
+            data.seek(offset);
+            data.writeInt(~data.readInt());
+        } finally {
+            data.close();
+        }
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(new byte[RECORD_SIZE / 2]);
+        } finally {
+            out.close();
+        }
+
+        store = open();
+        added.remove(3);
+        assertEquals(added.size(), store.getCount(5, 4));
+        assertSameScores(bruteForceTop(added, 10, Long.MIN_VALUE), store.getTop(5, 4, 10));
+    }
+
+    @Test
+    public void movesAnUnreadableFileAsideBeforeAppending() throws Exception {
+        File file = new File(directory, "scores.dat");
+        byte[] garbage = new byte[HEADER_SIZE + 3 * RECORD_SIZE];
+        new Random(5).nextBytes(garbage);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(garbage);
+        } finally {
+            out.close();
+        }
+
+        store.close();
+        store = open();
+        assertEquals(0, store.getCount(5, 4));
+        List<Score> added = addRandomScores(store, 10, 6);
+        closeAndWaitForFile(added.size());
+
+        store = open();
+        assertEquals(added.size(), store.getCount(5, 4));
+        assertSameScores(bruteForceTop(added, 10, Long.MIN_VALUE), store.getTop(5, 4, 10));
+        File corrupt = new File(directory, "scores.dat.corrupt");
+        assertTrue(Arrays.equals(garbage, readFile(corrupt)));
+    }
+
+    @Test
+    public void cutsOffATornRecordBeforeAppending() throws Exception {
+        List<Score> added = addRandomScores(store, 10, 7);
+        closeAndWaitForFile(added.size());
+        File file = new File(directory, "scores.dat");
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(new byte[RECORD_SIZE / 2]);
+        } finally {
+            out.close();
+        }
+
+        store = open();
+        assertEquals(HEADER_SIZE + added.size() * RECORD_SIZE, file.length());
+        added.addAll(addRandomScores(store, 5, 8));
+        closeAndWaitForFile(added.size());
+
+        store = open();
+        assertEquals(added.size(), store.getCount(5, 4));
+        assertSameScores(bruteForceTop(added, 15, Long.MIN_VALUE), store.getTop(5, 4, 15));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile data = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) data.length()];
+            data.readFully(bytes);
+            return bytes;
+        } finally {
+            data.close();
+        }
+    }
+
+    private ScoreStore open() {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        ScoreStore opened = new ScoreStore(new Callable<File>() {
+            @Override
+            public File call() {
+                return directory;
+            }
+        });
+        opened.load(new ScoreStore.LoadCallback() {
+            @Override
+            public void onLoaded(int count) {
+                loaded.countDown();
+            }
+        });
+        try {
+            assertTrue(loaded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        return opened;
+    }
+
+    /**
+     * The store writes in the background and cannot be joined, so wait for the records to reach the file.
+     */
+    private void closeAndWaitForFile(int records) throws InterruptedException, IOException {
+        store.close();
+        File file = new File(directory, "scores.dat");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (file.length() < HEADER_SIZE + (long) records * RECORD_SIZE) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("scores not written, " + file.length() + " bytes");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Adds 5x4 scores dated about 0 to {@code count}, with the clock set back now and then.
+     */
+    private static List<Score> addRandomScores(ScoreStore store, int count, long seed) {
+        Random random = new Random(seed);
+        List<Score> added = new ArrayList<Score>();
+        for (int i = 0; i < count; i++) {
+            long date = random.nextInt(10) == 0 ? i - random.nextInt(100) : i;
+            // few distinct times and moves, so ties are common
+            Score score = new Score(5, 4, date, 1000 * random.nextInt(50), random.nextInt(5));
+            store.add(score);
+            added.add(score);
+        }
+        return added;
+    }
+
+    private static List<Score> bruteForceTop(List<Score> added, int n, long since) {
+        List<Score> recent = new ArrayList<Score>();
+        for (Score score : added) {
+            if (score.getDate() >= since) {
+                recent.add(score);
+            }
+        }
+        // stable, so ties stay in arrival order
+        Collections.sort(recent, new Comparator<Score>() {
+            @Override
+            public int compare(Score a, Score b) {
+                if (a.getElapsed() != b.getElapsed()) {
+                    return a.getElapsed() < b.getElapsed() ? -1 : 1;
+                }
+                return a.getMoves() < b.getMoves() ? -1 : (a.getMoves() == b.getMoves() ? 0 : 1);
+            }
+        });
+        return recent.subList(0, Math.min(n, recent.size()));
+    }
+
+    private static void assertSameScores(List<Score> expected, List<Score> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDate(), actual.get(i).getDate());
+            assertEquals(expected.get(i).getElapsed(), actual.get(i).getElapsed());
+            assertEquals(expected.get(i).getMoves(), actual.get(i).getMoves());
+        }
+    }
+}
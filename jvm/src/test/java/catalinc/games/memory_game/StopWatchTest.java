@@ -0,0 +1,136 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a stop watch from a manual clock, so every reading is exact.
+ */
+public class StopWatchTest {
+
+    private static final long MILLI = 1000000;
+
+    @Test
+    public void pausingTwiceKeepsTheFirstPause() {
+        ManualClock clock = new ManualClock(5000 * MILLI);
+        StopWatch stopWatch = new StopWatch(clock);
+        stopWatch.start();
+        clock.advance(100 * MILLI);
+        stopWatch.pause();
+        clock.advance(50 * MILLI);
+        stopWatch.pause();
+        assertFalse(stopWatch.isRunning());
+        clock.advance(50 * MILLI);
+
+        assertEquals(100, stopWatch.elapsed());
+        stopWatch.resume();
+        clock.advance(10 * MILLI);
+        assertEquals(110, stopWatch.elapsed());
+    }
+
+    @Test
+    public void resumingTwiceKeepsTheFirstResume() {
+        ManualClock clock = new ManualClock();
+        StopWatch stopWatch = new StopWatch(clock);
+        stopWatch.start();
+        clock.advance(100 * MILLI);
+        stopWatch.pause();
+        clock.advance(1000 * MILLI);
+        stopWatch.resume();
+        clock.advance(30 * MILLI);
+        stopWatch.resume();
+        assertTrue(stopWatch.isRunning());
+        clock.advance(20 * MILLI);
+
+        assertEquals(150, stopWatch.elapsed());
+        assertEquals(150 * MILLI, stopWatch.elapsedNanos());
+    }
+
+    @Test
+    public void lapsAndSplitsLeaveOutPauses() {
+        ManualClock clock = new ManualClock();
+        StopWatch stopWatch = new StopWatch(clock);
+        stopWatch.start();
+        clock.advance(40 * MILLI);
+        assertEquals(40 * MILLI, stopWatch.lap());
+
+        // a lap that spans a pause
+        clock.advance(10 * MILLI);
+        stopWatch.pause();
+        clock.advance(500 * MILLI);
+        assertEquals(10 * MILLI, stopWatch.split());
+        stopWatch.resume();
+        clock.advance(15 * MILLI);
+        assertEquals(25 * MILLI, stopWatch.split());
+        // a split does not end the lap
+        assertEquals(25 * MILLI, stopWatch.lap());
+        assertEquals(0, stopWatch.split());
+        assertEquals(65, stopWatch.elapsed());
+
+        // ending a lap while paused
+        clock.advance(5 * MILLI);
+        stopWatch.pause();
+        clock.advance(100 * MILLI);
+        assertEquals(5 * MILLI, stopWatch.lap());
+        stopWatch.resume();
+        clock.advance(7 * MILLI);
+        assertEquals(7 * MILLI, stopWatch.split());
+    }
+
+    @Test
+    public void startResetsTimeAndLaps() {
+        ManualClock clock = new ManualClock();
+        StopWatch stopWatch = new StopWatch(90 * MILLI, clock);
+        assertFalse(stopWatch.isRunning());
+        assertEquals(0, stopWatch.split());
+        clock.advance(10 * MILLI);
+        assertEquals(90, stopWatch.elapsed());
+
+        stopWatch.start();
+        clock.advance(20 * MILLI);
+        assertEquals(20, stopWatch.elapsed());
+        assertEquals(20 * MILLI, stopWatch.lap());
+    }
+
+    @Test
+    public void copiesKeepRunningOnTheirClock() {
+        ManualClock clock = new ManualClock();
+        StopWatch stopWatch = new StopWatch(clock);
+        stopWatch.start();
+        clock.advance(30 * MILLI);
+        StopWatch copy = stopWatch.copy();
+        stopWatch.pause();
+        clock.advance(20 * MILLI);
+
+        assertEquals(30, stopWatch.elapsed());
+        assertEquals(50, copy.elapsed());
+        stopWatch.set(copy);
+        assertTrue(stopWatch.isRunning());
+        assertEquals(50, stopWatch.elapsed());
+    }
+
+    @Test
+    public void formatsMinutesAndHours() {
+        assertFormat("0:00", 0);
+        assertFormat("0:00", -5000);
+        assertFormat("0:00", 999);
+        assertFormat("0:01", 1000);
+        assertFormat("0:59", 59999);
+        assertFormat("1:00", 60000);
+        assertFormat("10:05", 605000);
+        assertFormat("59:59", 3599999);
+        assertFormat("1:00:00", 3600000);
+        assertFormat("1:02:03", 3723000);
+        assertFormat("12:34:56", (12 * 3600 + 34 * 60 + 56) * 1000L);
+        assertFormat("99:59:59", 100 * 3600 * 1000L - 1);
+    }
+
+    private static void assertFormat(String expected, long millis) {
+        char[] dest = new char[9];
+        int length = StopWatch.format(millis, dest);
+        assertEquals(expected, new String(dest, 0, length));
+    }
+}
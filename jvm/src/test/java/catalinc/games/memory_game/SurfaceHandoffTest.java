@@ -0,0 +1,181 @@
+package catalinc.games.memory_game;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a drawing thread the way RenderThread uses the handoff, through many surface lifecycles driven from the test
+ * thread like the UI thread does: the surface is never drawn on once detached, and detaching never hangs.
+ */
+public class SurfaceHandoffTest {
+
+    private static final int CYCLES = 20000;
+
+    private SurfaceHandoff handoff;
+    private Drawer         drawer;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (drawer != null) {
+            drawer.finish();
+        }
+    }
+
+    @Test
+    public void repeatedLifecyclesNeverUseADetachedSurface() throws InterruptedException {
+        start(false);
+        for (int i = 0; i < CYCLES; i++) {
+            Surface surface = new Surface();
+            drawer.created = surface;
+            handoff.attach();
+            // sometimes let it draw, sometimes detach before it even picks the surface up
+            if (i % 2 == 0) {
+                LockSupport.parkNanos(20000);
+            }
+            handoff.detach(drawer);
+            surface.destroyed = true;
+        }
+        drawer.finish();
+
+        assertEquals("frames drawn on a detached surface", 0, drawer.invalidFrames);
+        assertTrue("no frame drawn", drawer.frames > 0);
+        assertEquals("surfaces acquired and released", drawer.acquired, drawer.released);
+        assertTrue(drawer.acquired <= CYCLES);
+        assertFalse(handoff.isInUse());
+    }
+
+    @Test
+    public void stoppingWakesUpAThreadWaitingForASurface() throws InterruptedException {
+        start(false);
+        drawer.finish();
+        assertFalse(drawer.isAlive());
+        assertEquals(0, drawer.acquired);
+    }
+
+    @Test
+    public void stoppingReleasesTheSurface() throws InterruptedException {
+        start(false);
+        handoff.attach();
+        drawer.finish();
+        assertFalse(drawer.isAlive());
+        assertFalse(handoff.isInUse());
+        // the UI thread destroys the surface after the drawing thread is gone
+        handoff.detach(drawer);
+    }
+
+    @Test
+    public void detachReturnsWhenTheDrawingThreadFails() throws InterruptedException {
+        start(true);
+        handoff.attach();
+        drawer.join(10000);
+        assertFalse(drawer.isAlive());
+        handoff.detach(drawer);
+        assertFalse(handoff.isInUse());
+    }
+
+    @Test
+    public void detachWithoutASurfaceReturns() {
+        handoff = new SurfaceHandoff();
+        handoff.detach(Thread.currentThread());
+        assertFalse(handoff.isHeld());
+    }
+
+    private void start(boolean failOnFirstFrame) {
+        handoff = new SurfaceHandoff();
+        handoff.setRunning(true);
+        drawer = new Drawer(handoff, failOnFirstFrame);
+        drawer.start();
+    }
+
+    /**
+     * Stands for the Android surface, the UI thread destroys it once it got it back.
+     */
+    private static class Surface {
+        volatile boolean destroyed;
+    }
+
+    /**
+     * The RenderThread loop, drawing on the last surface created.
+     */
+    private static class Drawer extends Thread {
+
+        private final SurfaceHandoff handoff;
+        private final boolean        failOnFirstFrame;
+
+        volatile boolean running;
+        volatile Surface created;
+
+        // drawing thread only, read after join()
+        Surface surface;
+        int frames;
+        int invalidFrames;
+        int acquired;
+        int released;
+
+        Drawer(SurfaceHandoff handoff, boolean failOnFirstFrame) {
+            this.handoff = handoff;
+            this.failOnFirstFrame = failOnFirstFrame;
+            running = true;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    if (!awaitSurface()) {
+                        break;
+                    }
+                    if (failOnFirstFrame) {
+                        throw new IllegalStateException("draw failed");
+                    }
+                    // drawing takes a while, the UI thread may try to detach meanwhile
+                    boolean destroyed = surface.destroyed;
+                    LockSupport.parkNanos(10000);
+                    if (destroyed || surface.destroyed) {
+                        invalidFrames++;
+                    }
+                    frames++;
+                    // wait for the next frame, like RenderThread when nothing changed
+                    LockSupport.parkNanos(50000);
+                }
+            } catch (IllegalStateException e) {
+                // the thread dies, the finally block must still give the surface back
+            } finally {
+                if (handoff.isInUse()) {
+                    released++;
+                }
+                handoff.release();
+            }
+        }
+
+        private boolean awaitSurface() {
+            if (handoff.isHeld()) {
+                return true;
+            }
+            if (handoff.isInUse()) {
+                released++;
+                handoff.release();
+            }
+            if (!handoff.acquire()) {
+                return false;
+            }
+            surface = created;
+            acquired++;
+            return true;
+        }
+
+        void finish() throws InterruptedException {
+            running = false;
+            handoff.setRunning(false);
+            LockSupport.unpark(this);
+            join(10000);
+        }
+    }
+}
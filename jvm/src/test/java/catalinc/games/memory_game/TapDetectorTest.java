@@ -0,0 +1,96 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds touches the way GameView does and plays the taps the way GameThread does, through the input queue onto the
+ * board.
+ */
+public class TapDetectorTest {
+
+    private static final float SLOP = 16;
+    private static final int   SIZE = 480;
+
+    @Test
+    public void twoFastTapsOnAdjacentTilesFlipBoth() {
+        GameEngine engine = new GameEngine(new Random(1), new ManualClock(), 10);
+        engine.newGame(4, 4, 7);
+        Grid grid = engine.getGrid();
+        grid.setCanvasWidth(SIZE, 0);
+        grid.setCanvasHeight(SIZE, 0);
+        Camera camera = new Camera();
+        camera.setViewSize(SIZE, SIZE);
+        camera.setBoardSize(grid.getWidth(), grid.getHeight());
+        TapDetector taps = new TapDetector(SLOP);
+        InputQueue input = new InputQueue(8);
+
+        // tile (1, 1) then tile (1, 2), 60 ms apart, well within a double tap timeout
+        float tile = grid.getTileWidth();
+        tap(taps, input, 1.5f * tile, 1.5f * tile, 0);
+        tap(taps, input, 2.5f * tile, 1.5f * tile + 3, 60);
+
+        int played = 0;
+        int first = -1;
+        while (!input.isEmpty()) {
+            played++;
+            int index = grid.indexAtPoint(input.peekX(), input.peekY(), camera);
+            if (first < 0) {
+                first = index;
+            }
+            assertNotEquals(GameRules.MOVE_IGNORED, engine.select(index));
+            input.remove();
+        }
+        assertEquals(2, played);
+        assertEquals(grid.indexOf(1, 1), first);
+        assertEquals(2, engine.getMoves());
+    }
+
+    @Test
+    public void longPressIsATap() {
+        TapDetector taps = new TapDetector(SLOP);
+        taps.onDown(100, 100);
+        taps.onMove(104, 98);
+        assertTrue(taps.onUp(105, 99));
+    }
+
+    @Test
+    public void scrollIsNoTap() {
+        TapDetector taps = new TapDetector(SLOP);
+        taps.onDown(100, 100);
+        taps.onMove(130, 100);
+        // back where it started, still a scroll
+        assertFalse(taps.onUp(100, 100));
+    }
+
+    @Test
+    public void pinchIsNoTap() {
+        TapDetector taps = new TapDetector(SLOP);
+        taps.onDown(100, 100);
+        taps.cancel();
+        assertFalse(taps.onUp(100, 100));
+    }
+
+    @Test
+    public void upWithoutDownIsNoTap() {
+        TapDetector taps = new TapDetector(SLOP);
+        assertFalse(taps.onUp(100, 100));
+        taps.onDown(100, 100);
+        assertTrue(taps.onUp(100, 100));
+        assertFalse(taps.onUp(100, 100));
+    }
+
+    private static void tap(TapDetector taps, InputQueue input, float x, float y, long time) {
+        taps.onDown(x, y);
+        taps.onMove(x + 1, y);
+        if (taps.onUp(x + 1, y)) {
+            input.offer(0, x + 1, y, time + 40);
+        }
+    }
+}
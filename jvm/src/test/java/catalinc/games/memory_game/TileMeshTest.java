@@ -0,0 +1,140 @@
+package catalinc.games.memory_game;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks, without a GPU, that the OpenGL mesh lays the tiles out where the canvas renderer blits its sprites: at the
+ * face position and size the frame gives both renderers, for every tile visible through the camera.
+ */
+public class TileMeshTest {
+
+    private static final int WIDTH      = 1080;
+    private static final int HEIGHT     = 1920;
+    private static final int FADE_TICKS = 10;
+    private static final int HIDDEN     = 0xff073642;
+    private static final int GLYPH      = 0xff002b36;
+
+    private static final TileFaces FACES = new TileFaces() {
+        @Override
+        public int getColor(int pair) {
+            return 0xff000000 | (pair * 0x2f4d5b & 0xffffff);
+        }
+
+        @Override
+        public int getGlyph(int pair) {
+            return pair % TileFaces.GLYPH_COUNT;
+        }
+    };
+
+    @Test
+    public void matchesTheCanvasLayoutOfAWholeBoard() {
+        Grid grid = newGrid(5, 4, 1);
+        Camera camera = newCamera(grid);
+        assertSameLayout(grid, camera, 0);
+    }
+
+    @Test
+    public void matchesTheCanvasLayoutPannedAndZoomed() {
+        Grid grid = newGrid(40, 30, 2);
+        Camera camera = newCamera(grid);
+        Random random = new Random(3);
+        for (int i = 0; i < 50; i++) {
+            camera.zoom(0.5f + random.nextFloat() * 1.5f, random.nextInt(WIDTH), random.nextInt(HEIGHT));
+            camera.pan(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000);
+            assertSameLayout(grid, camera, random.nextFloat());
+        }
+    }
+
+    @Test
+    public void reusesTheVertexArray() {
+        Grid grid = newGrid(24, 16, 4);
+        Frame frame = new Frame();
+        frame.set(grid, newCamera(grid), WIDTH, HEIGHT, 0, 0);
+        TileMesh mesh = new TileMesh(FACES, HIDDEN, GLYPH, FADE_TICKS);
+        mesh.build(frame, 0);
+        float[] vertices = mesh.getVertices();
+        mesh.build(frame, 0.5f);
+        assertEquals(vertices, mesh.getVertices());
+    }
+
+    /**
+     * Every tile state at once: hidden, selected, faded out and fading solved tiles.
+     */
+    private static Grid newGrid(int rows, int cols, long seed) {
+        Grid grid = new Grid(rows, cols, HEIGHT, WIDTH);
+        Random random = new Random(seed);
+        for (int i = 0; i < grid.size(); i++) {
+            grid.setTile(i, i / 2, random.nextInt(3));
+            if (grid.getState(i) == Tile.STATE_SOLVED) {
+                grid.setAnimationSteps(i, random.nextInt(FADE_TICKS + 1));
+            }
+        }
+        return grid;
+    }
+
+    private static Camera newCamera(Grid grid) {
+        Camera camera = new Camera();
+        camera.setViewSize(WIDTH, HEIGHT);
+        camera.setBoardSize(grid.getWidth(), grid.getHeight());
+        return camera;
+    }
+
+    private static void assertSameLayout(Grid grid, Camera camera, float interpolation) {
+        Frame frame = new Frame();
+        frame.set(grid, camera, WIDTH, HEIGHT, 0, 0);
+        TileMesh mesh = new TileMesh(FACES, HIDDEN, GLYPH, FADE_TICKS);
+        mesh.build(frame, interpolation);
+
+        float scale = camera.getScale();
+        int spriteWidth = frame.faceWidth();
+        int spriteHeight = frame.faceHeight();
+        float[] v = mesh.getVertices();
+        int vertex = 0;
+        for (int i = 0; i < grid.size(); i++) {
+            float left = (grid.colOf(i) * grid.getTileWidth() - camera.getX()) * scale;
+            float top = (grid.rowOf(i) * grid.getTileHeight() - camera.getY()) * scale;
+            float right = left + grid.getTileWidth() * scale;
+            float bottom = top + grid.getTileHeight() * scale;
+            if (right <= 0 || bottom <= 0 || left >= WIDTH || top >= HEIGHT) {
+                continue;
+            }
+            int alpha = 255;
+            if (grid.getState(i) == Tile.STATE_SOLVED) {
+                int steps = grid.getAnimationSteps(i);
+                alpha = steps > 0 ? Frame.fadeAlpha(steps, interpolation, FADE_TICKS) : 0;
+            }
+            if (alpha == 0) {
+                continue;
+            }
+
+            String tile = "tile " + i + " at scale " + scale;
+            int row = grid.rowOf(i) - frame.firstRow;
+            int col = grid.colOf(i) - frame.firstCol;
+            assertTrue(tile, row >= 0 && row < frame.windowRows && col >= 0 && col < frame.windowCols);
+            int window = row * frame.windowCols + col;
+            float faceLeft = frame.faceLeft(window);
+            float faceTop = frame.faceTop(window);
+            int at = vertex * TileMesh.FLOATS_PER_VERTEX;
+            // the face quad comes first: top left, top right, bottom left, then bottom left, top right, bottom right
+            assertEquals(tile, faceLeft, v[at], 0.01);
+            assertEquals(tile, faceTop, v[at + 1], 0.01);
+            assertEquals(tile, faceLeft + spriteWidth, v[at + 6], 0.01);
+            assertEquals(tile, faceTop + spriteHeight, v[at + 5 * 6 + 1], 0.01);
+            assertEquals(tile, alpha / 255f, v[at + 5], 0.001);
+            if (grid.getState(i) == Tile.STATE_HIDDEN) {
+                assertEquals(tile, TileMesh.red(HIDDEN), v[at + 2], 0);
+                vertex += 6;
+            } else {
+                assertEquals(tile, TileMesh.red(FACES.getColor(grid.getColor(i))), v[at + 2], 0);
+                vertex += TileMesh.faceVertices(FACES.getGlyph(grid.getColor(i)));
+            }
+        }
+        assertEquals(vertex, mesh.getVertexCount());
+        assertTrue(vertex > 0);
+    }
+}
@@ -0,0 +1,219 @@
+package catalinc.games.memory_game;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays many headless games in parallel, for balance and regression testing.
+ * <p/>
+ * Game {@code n} of a batch is dealt and played from seeds derived only from the batch seed and {@code n}, so the
+ * results don't depend on the number of threads or on how the games were split between them.
+ * <p/>
+ * Playing time is simulated on a {@link ManualClock}: every move takes a fixed time plus an exponentially
+ * distributed think time, see {@link #setPace(int, int)}.
+ * <p/>
+ * Usage: {@code BatchRunner rows cols games [seed [threads]]}
+ */
+public class BatchRunner {
+
+    private static final int  CHUNK              = 256;
+    private static final int  MAX_MOVES_PER_TILE = 1000;
+    private static final long PLAYER_SEED_SALT   = 0x5deece66dL;
+    private static final long PACE_SEED_SALT     = 0x2545f4914f6cdd1dL;
+
+    private final int            rows;
+    private final int            cols;
+    private final Player.Factory players;
+
+    private int moveMillis;
+    private int thinkMillis;
+
+    public BatchRunner(int rows, int cols, Player.Factory players) {
+        if (!GameRules.isValidBoard(rows, cols)) {
+            throw new IllegalArgumentException("invalid board size " + rows + "x" + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.players = players;
+    }
+
+    /**
+     * @param moveMillis  time every move takes
+     * @param thinkMillis mean of the think time added to every move
+     */
+    public void setPace(int moveMillis, int thinkMillis) {
+        this.moveMillis = moveMillis;
+        this.thinkMillis = thinkMillis;
+    }
+
+    /**
+     * Runs the batch on {@code threads} threads and waits for it.
+     */
+    public Result run(final long games, final long seed, int threads) throws InterruptedException {
+        final AtomicLong next = new AtomicLong();
+        final List<Result> results = new ArrayList<Result>();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final Result result = new Result();
+            results.add(result);
+            Thread worker = new Thread("BatchRunner-" + t) {
+                @Override
+                public void run() {
+                    play(next, games, seed, result);
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+
+        Result total = new Result();
+        for (int t = 0; t < threads; t++) {
+            workers.get(t).join();
+            total.add(results.get(t));
+        }
+        return total;
+    }
+
+    private void play(AtomicLong next, long games, long seed, Result result) {
+        Random boardRandom = new Random();
+        Random playerRandom = new Random();
+        Random paceRandom = new Random();
+        ManualClock clock = new ManualClock();
+        GameEngine engine = new GameEngine(boardRandom, clock, 0);
+        Player player = players.create(playerRandom);
+        int maxMoves = MAX_MOVES_PER_TILE * rows * cols;
+
+        long start;
+        while ((start = next.getAndAdd(CHUNK)) < games) {
+            long end = Math.min(start + CHUNK, games);
+            for (long game = start; game < end; game++) {
+                long gameSeed = mix(seed + game);
+                boardRandom.setSeed(gameSeed);
+                playerRandom.setSeed(gameSeed ^ PLAYER_SEED_SALT);
+                paceRandom.setSeed(gameSeed ^ PACE_SEED_SALT);
+                playGame(engine, player, clock, paceRandom, maxMoves, result);
+            }
+        }
+    }
+
+    private void playGame(GameEngine engine, Player player, ManualClock clock, Random paceRandom, int maxMoves,
+                          Result result) {
+        engine.newGame(rows, cols);
+        Grid grid = engine.getGrid();
+        player.newGame(grid);
+        while (!engine.isOver()) {
+            if (engine.getMoves() >= maxMoves) {
+                result.unfinished++;
+                return;
+            }
+            int index = player.nextMove(grid);
+            if (moveMillis > 0 || thinkMillis > 0) {
+                double think = thinkMillis > 0 ? -thinkMillis * Math.log(1 - paceRandom.nextDouble()) : 0;
+                clock.advance((long) ((moveMillis + think) * 1000000));
+            }
+            if (engine.select(index) != GameRules.MOVE_IGNORED) {
+                player.onReveal(index, grid.getColor(index));
+            } else {
+                result.ignoredMoves++;
+            }
+        }
+        result.moves.record(engine.getMoves());
+        result.times.record(engine.getStopWatch().elapsed());
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreads consecutive game numbers over unrelated seeds.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public static class Result {
+
+        private final Histogram moves = new Histogram();
+        private final Histogram times = new Histogram();
+        private       long      unfinished;
+        private       long      ignoredMoves;
+
+        /**
+         * @return moves needed by the finished games
+         */
+        public Histogram getMoves() {
+            return moves;
+        }
+
+        /**
+         * @return simulated playing time of the finished games, in milliseconds
+         */
+        public Histogram getTimes() {
+            return times;
+        }
+
+        /**
+         * @return games given up after too many moves
+         */
+        public long getUnfinished() {
+            return unfinished;
+        }
+
+        /**
+         * @return moves rejected by the rules, a player bug if not 0
+         */
+        public long getIgnoredMoves() {
+            return ignoredMoves;
+        }
+
+        void add(Result other) {
+            moves.add(other.moves);
+            times.add(other.times);
+            unfinished += other.unfinished;
+            ignoredMoves += other.ignoredMoves;
+        }
+
+        public void writeTo(PrintWriter out) {
+            out.println("games:      " + moves.getCount());
+            out.println("unfinished: " + unfinished);
+            out.println("ignored:    " + ignoredMoves);
+            out.printf("moves:      min %d, mean %.2f, p50 %d, p90 %d, p99 %d, max %d%n",
+                       moves.getMin(), moves.getMean(),
+                       moves.getValueAtPercentile(50),
+                       moves.getValueAtPercentile(90),
+                       moves.getValueAtPercentile(99),
+                       moves.getMax());
+            if (times.getMax() > 0) {
+                out.printf("time:       mean %.1f s, p50 %.1f s, p90 %.1f s, p99 %.1f s%n",
+                           times.getMean() / 1000,
+                           times.getValueAtPercentile(50) / 1000.0,
+                           times.getValueAtPercentile(90) / 1000.0,
+                           times.getValueAtPercentile(99) / 1000.0);
+            }
+            out.flush();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.err.println("usage: BatchRunner rows cols games [seed [threads]]");
+            System.exit(2);
+        }
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        long games = Long.parseLong(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        Result result = new BatchRunner(rows, cols, RandomPlayer.FACTORY).run(games, seed, threads);
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        PrintWriter out = new PrintWriter(System.out);
+        result.writeTo(out);
+        out.println("run time:   " + millis + " ms on " + threads + " threads");
+        out.flush();
+    }
+}
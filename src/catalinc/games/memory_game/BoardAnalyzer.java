@@ -0,0 +1,74 @@
+package catalinc.games.memory_game;
+
+import java.io.PrintWriter;
+
+/**
+ * Monte Carlo analysis of board difficulty: plays many games per board size with players of decreasing memory and
+ * prints the expected number of moves and the distribution of the playing time, for tuning the board sizes.
+ * <p/>
+ * Every row is a {@link BatchRunner} batch, spread over all the cores. The same seed gives the same table.
+ * <p/>
+ * Usage: {@code BoardAnalyzer games [rows cols [seed [threads]]]}, all the menu board sizes if no size is given
+ */
+public class BoardAnalyzer {
+
+    // rough pace of a person: turning a tile, plus the mean time spent looking for the next one
+    private static final int MOVE_MILLIS  = 600;
+    private static final int THINK_MILLIS = 900;
+
+    private static final int[][] BOARD_SIZES = {{5, 4}, {6, 6}, {8, 6}, {12, 8}, {24, 16}};
+
+    private static final String[]         PLAYER_NAMES = {"perfect", "memory 16", "memory 8", "memory 4", "random"};
+    private static final Player.Factory[] PLAYERS      = {MemoryPlayer.PERFECT,
+                                                          MemoryPlayer.factory(16),
+                                                          MemoryPlayer.factory(8),
+                                                          MemoryPlayer.factory(4),
+                                                          RandomPlayer.FACTORY};
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length != 1 && args.length < 3) {
+            System.err.println("usage: BoardAnalyzer games [rows cols [seed [threads]]]");
+            System.exit(2);
+        }
+        long games = Long.parseLong(args[0]);
+        int[][] boards = args.length >= 3
+                         ? new int[][]{{Integer.parseInt(args[1]), Integer.parseInt(args[2])}}
+                         : BOARD_SIZES;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        PrintWriter out = new PrintWriter(System.out);
+        out.printf("%-6s %-10s %12s %8s %8s %8s %10s %10s %10s %10s%n",
+                   "board", "player", "moves", "p50", "p90", "p99", "time p50", "time p90", "unfinished", "run ms");
+        for (int[] board : boards) {
+            for (int p = 0; p < PLAYERS.length; p++) {
+                BatchRunner runner = new BatchRunner(board[0], board[1], PLAYERS[p]);
+                runner.setPace(MOVE_MILLIS, THINK_MILLIS);
+
+                long start = System.nanoTime();
+                BatchRunner.Result result = runner.run(games, seed, threads);
+                long millis = (System.nanoTime() - start) / 1000000;
+
+                Histogram moves = result.getMoves();
+                Histogram times = result.getTimes();
+                // half width of the 95% confidence interval of the mean
+                double error = moves.getCount() > 0 ? 1.96 * moves.getStdDeviation() / Math.sqrt(moves.getCount()) : 0;
+                out.printf("%-6s %-10s %12s %8d %8d %8d %10s %10s %10d %10d%n",
+                           board[1] + "x" + board[0], PLAYER_NAMES[p],
+                           String.format("%.1f+-%.1f", moves.getMean(), error),
+                           moves.getValueAtPercentile(50),
+                           moves.getValueAtPercentile(90),
+                           moves.getValueAtPercentile(99),
+                           formatTime(times.getValueAtPercentile(50)),
+                           formatTime(times.getValueAtPercentile(90)),
+                           result.getUnfinished(), millis);
+                out.flush();
+            }
+        }
+    }
+
+    private static String formatTime(long millis) {
+        char[] text = new char[16];
+        return new String(text, 0, StopWatch.format(millis, text));
+    }
+}
@@ -0,0 +1,118 @@
+package catalinc.games.memory_game;
+
+/**
+ * Maps the board onto the screen: the board point shown at the top left corner of the view, and the zoom.
+ * <p/>
+ * {@code screen = (board - position) * scale}. The zoom ranges from showing the whole board to {@link #MAX_SCALE},
+ * and the position is kept so the board covers as much of the view as it can. Not thread safe.
+ */
+public class Camera {
+
+    public static final float MAX_SCALE = 4;
+
+    private int viewWidth;
+    private int viewHeight;
+    private int boardWidth;
+    private int boardHeight;
+
+    private float x;
+    private float y;
+    private float scale;
+
+    private boolean zooming;
+
+    public Camera() {
+        scale = 1;
+    }
+
+    /**
+     * Shows the board from its top left corner, at its own size.
+     */
+    public void reset() {
+        x = 0;
+        y = 0;
+        scale = 1;
+        clamp();
+    }
+
+    public void setViewSize(int width, int height) {
+        viewWidth = width;
+        viewHeight = height;
+        clamp();
+    }
+
+    public void setBoardSize(int width, int height) {
+        boardWidth = width;
+        boardHeight = height;
+        clamp();
+    }
+
+    /**
+     * Moves the board by {@code dx, dy} screen pixels, in the opposite direction; the way a scroll gesture reports.
+     */
+    public void pan(float dx, float dy) {
+        x += dx / scale;
+        y += dy / scale;
+        clamp();
+    }
+
+    /**
+     * Multiplies the zoom by {@code factor}, keeping the board point under the focus, in screen pixels, in place.
+     */
+    public void zoom(float factor, float focusX, float focusY) {
+        float boardX = toBoardX(focusX);
+        float boardY = toBoardY(focusY);
+        scale *= factor;
+        clampScale();
+        x = boardX - focusX / scale;
+        y = boardY - focusY / scale;
+        clamp();
+    }
+
+    public float toBoardX(float screenX) {
+        return x + screenX / scale;
+    }
+
+    public float toBoardY(float screenY) {
+        return y + screenY / scale;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * @return true while a scale gesture is in progress; renderers may then stretch what they cached for the scale
+     * the gesture started at instead of rendering it again for every step
+     */
+    public boolean isZooming() {
+        return zooming;
+    }
+
+    public void setZooming(boolean zooming) {
+        this.zooming = zooming;
+    }
+
+    private void clamp() {
+        clampScale();
+        // a board smaller than the view stays in the top left corner
+        x = Math.max(Math.min(x, boardWidth - viewWidth / scale), 0);
+        y = Math.max(Math.min(y, boardHeight - viewHeight / scale), 0);
+    }
+
+    private void clampScale() {
+        float minScale = 1;
+        if (boardWidth > 0 && boardHeight > 0 && viewWidth > 0 && viewHeight > 0) {
+            minScale = Math.min(minScale, Math.min((float) viewWidth / boardWidth, (float) viewHeight / boardHeight));
+        }
+        scale = Math.min(Math.max(scale, minScale), MAX_SCALE);
+    }
+}
@@ -0,0 +1,183 @@
+package catalinc.games.memory_game;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.SurfaceHolder;
+
+/**
+ * Software renderer, blits cached tile sprites through {@link SurfaceHolder#lockCanvas(Rect)}.
+ * <p/>
+ * Only the tiles that differ from the last drawn frame, or are animating, are redrawn. Moving the camera redraws
+ * the visible tiles. While a pinch is in progress the sprites are stretched to the tiles on screen; they are rendered
+ * again at the new size once it ends.
+ */
+public class CanvasTileRenderer implements TileRenderer {
+
+    // share of the heap the tile sprites may use
+    private static final int SPRITE_MEMORY_FRACTION = 8;
+
+    private final SurfaceHolder mSurfaceHolder;
+    private final GameMetrics   mMetrics;
+    private final int           mFadeTicks;
+
+    private final TileSpriteCache mSprites;
+    private final Paint           mBackgroundPaint;
+    private final Paint           mFadePaint;
+
+    private final Rect  mDirtyRect;
+    private final RectF mFaceRect;
+
+    // what is on screen
+    private final Frame   mDrawn;
+    private       boolean mInvalidated;
+
+    CanvasTileRenderer(SurfaceHolder surfaceHolder, GameMetrics metrics, int fadeTicks,
+                       int backgroundColor, int hiddenTileColor) {
+        mSurfaceHolder = surfaceHolder;
+        mMetrics = metrics;
+        mFadeTicks = fadeTicks;
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(backgroundColor);
+        // also stretches the sprites while zooming
+        mFadePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mSprites = new TileSpriteCache(new TilePalette(backgroundColor), hiddenTileColor,
+                                       Runtime.getRuntime().maxMemory() / SPRITE_MEMORY_FRACTION);
+
+        mDirtyRect = new Rect();
+        mFaceRect = new RectF();
+        mDrawn = new Frame();
+        mInvalidated = true;
+    }
+
+    @Override
+    public boolean init() {
+        return true;
+    }
+
+    @Override
+    public void invalidate() {
+        mInvalidated = true;
+    }
+
+    /**
+     * Computes the union of the areas covered by tiles that differ from what is on screen.
+     */
+    @Override
+    public boolean prepare(Frame frame) {
+        Rect dirty = mDirtyRect;
+        if (mInvalidated || !frame.hasSameLayout(mDrawn)) {
+            mInvalidated = false;
+            mDrawn.set(frame);
+            if (!frame.zooming || mSprites.getTileWidth() <= 0 || mSprites.getTileHeight() <= 0) {
+                mSprites.setTileSize(frame.faceWidth(), frame.faceHeight());
+            }
+            dirty.set(0, 0, frame.canvasWidth, frame.canvasHeight);
+            return true;
+        }
+
+        dirty.setEmpty();
+        int[] cells = frame.cells;
+        int[] drawn = mDrawn.cells;
+        float tileWidth = frame.tileWidth * frame.scale;
+        float tileHeight = frame.tileHeight * frame.scale;
+        for (int i = 0; i < frame.size; i++) {
+            // animated tiles change between ticks, so they are redrawn every frame
+            if (cells[i] != drawn[i] || Grid.animationStepsOf(cells[i]) > 0) {
+                float left = frame.tileLeft(i);
+                float top = frame.tileTop(i);
+                dirty.union((int) Math.floor(left), (int) Math.floor(top),
+                            (int) Math.ceil(left + tileWidth), (int) Math.ceil(top + tileHeight));
+            }
+        }
+        mDrawn.set(frame);
+        return !dirty.isEmpty();
+    }
+
+    @Override
+    public long draw(Frame frame, float interpolation) {
+        Canvas canvas = null;
+        long drawTime = 0;
+        try {
+            long lockStart = System.nanoTime();
+            // the surface may enlarge the dirty rect, drawTiles() redraws whatever it gets back
+            canvas = mSurfaceHolder.lockCanvas(mDirtyRect);
+            long drawStart = System.nanoTime();
+            mMetrics.getLockWaitTime().record(drawStart - lockStart);
+            if (canvas != null) {
+                drawTiles(canvas, frame, mDirtyRect, interpolation);
+                drawTime = System.nanoTime() - drawStart;
+                mMetrics.getDrawTime().record(drawTime);
+            }
+        } finally {
+            if (canvas != null) {
+                mSurfaceHolder.unlockCanvasAndPost(canvas);
+            }
+        }
+        if (canvas == null) {
+            mInvalidated = true;
+            return -1;
+        }
+        return drawTime;
+    }
+
+    /**
+     * Keeps the sprites, the next surface most likely has the same size.
+     */
+    @Override
+    public void detach() {
+        mInvalidated = true;
+    }
+
+    @Override
+    public void release() {
+        mSprites.clear();
+    }
+
+    private void drawTiles(Canvas canvas, Frame frame, Rect dirty, float interpolation) {
+        // the canvas is clipped to the dirty rect
+        canvas.drawColor(mBackgroundPaint.getColor());
+
+        float tileWidth = frame.tileWidth * frame.scale;
+        float tileHeight = frame.tileHeight * frame.scale;
+        int faceWidth = frame.faceWidth();
+        int faceHeight = frame.faceHeight();
+        boolean stretched = faceWidth != mSprites.getTileWidth() || faceHeight != mSprites.getTileHeight();
+        // only the visible window is in the frame
+        for (int i = 0; i < frame.size; i++) {
+            float left = frame.tileLeft(i);
+            float top = frame.tileTop(i);
+            if (!dirty.intersects((int) Math.floor(left), (int) Math.floor(top),
+                                  (int) Math.ceil(left + tileWidth), (int) Math.ceil(top + tileHeight))) {
+                continue;
+            }
+
+            int cell = frame.cells[i];
+            int alpha = Frame.faceAlpha(cell, interpolation, mFadeTicks);
+            if (alpha == 0) {
+                // faded out, solved tiles show the background
+                continue;
+            }
+            Paint paint = null;
+            if (alpha < 255 || stretched) {
+                mFadePaint.setAlpha(alpha);
+                paint = mFadePaint;
+            }
+            Bitmap sprite = mSprites.getSprite(Grid.colorOf(cell), Grid.stateOf(cell));
+            if (sprite == null) {
+                continue;
+            }
+            float faceLeft = frame.faceLeft(i);
+            float faceTop = frame.faceTop(i);
+            if (stretched) {
+                mFaceRect.set(faceLeft, faceTop, faceLeft + faceWidth, faceTop + faceHeight);
+                canvas.drawBitmap(sprite, null, mFaceRect, paint);
+            } else {
+                canvas.drawBitmap(sprite, faceLeft, faceTop, paint);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package catalinc.games.memory_game;
+
+/**
+ * Monotonic source of time, in nanoseconds. Lets the game be driven by a simulated clock.
+ */
+public interface Clock {
+
+    /**
+     * Never jumps with wall-clock changes; only differences between two readings are meaningful.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    long nanoTime();
+}
@@ -0,0 +1,173 @@
+package catalinc.games.memory_game;
+
+/**
+ * Description of what to draw, produced by the simulation and consumed by the renderer.
+ * <p/>
+ * Frames are recycled through a {@link FrameExchange}; a frame is only written by its current owner.
+ * <p/>
+ * A frame only holds the window of the board that is visible through the camera, so building and drawing it
+ * costs the same on any board size.
+ */
+public class Frame {
+
+    // gap between a tile and its face, in screen pixels
+    static final int FACE_MARGIN = 2;
+
+    int   canvasWidth;
+    int   canvasHeight;
+    int   rows;
+    int   cols;
+    int   tileWidth;
+    int   tileHeight;
+
+    // camera, see Camera
+    float viewX;
+    float viewY;
+    float scale;
+    boolean zooming;
+
+    // visible window of the board
+    int   firstRow;
+    int   firstCol;
+    int   windowRows;
+    int   windowCols;
+    // cells of the window row after row, packed as in Grid, without dirty flags
+    int[] cells;
+    int   size;
+
+    // uptime of the tick that produced the frame, animations are interpolated from it
+    long tickTime;
+    // event time of the oldest touch handled since the previous frame, 0 if none
+    long inputTime;
+
+    Frame() {
+        cells = new int[0];
+    }
+
+    /**
+     * Copies the part of the grid visible through the camera into this frame and clears its dirty flags.
+     *
+     * @return true if any visible cell had changed
+     */
+    boolean set(Grid grid, Camera camera, int canvasWidth, int canvasHeight, long tickTime, long inputTime) {
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.rows = grid.getRows();
+        this.cols = grid.getCols();
+        this.tileWidth = grid.getTileWidth();
+        this.tileHeight = grid.getTileHeight();
+        this.viewX = camera.getX();
+        this.viewY = camera.getY();
+        this.scale = camera.getScale();
+        this.zooming = camera.isZooming();
+
+        if (tileWidth > 0 && tileHeight > 0) {
+            firstCol = Math.min((int) (viewX / tileWidth), cols);
+            firstRow = Math.min((int) (viewY / tileHeight), rows);
+            int endCol = (int) Math.ceil((viewX + canvasWidth / scale) / tileWidth);
+            int endRow = (int) Math.ceil((viewY + canvasHeight / scale) / tileHeight);
+            windowCols = Math.max(Math.min(endCol, cols) - firstCol, 0);
+            windowRows = Math.max(Math.min(endRow, rows) - firstRow, 0);
+        } else {
+            firstCol = 0;
+            firstRow = 0;
+            windowCols = 0;
+            windowRows = 0;
+        }
+        this.size = windowRows * windowCols;
+        if (cells.length < size) {
+            cells = new int[size];
+        }
+        this.tickTime = tickTime;
+        this.inputTime = inputTime;
+        return grid.drainCells(cells, firstRow, firstCol, windowRows, windowCols);
+    }
+
+    void set(Frame other) {
+        canvasWidth = other.canvasWidth;
+        canvasHeight = other.canvasHeight;
+        rows = other.rows;
+        cols = other.cols;
+        tileWidth = other.tileWidth;
+        tileHeight = other.tileHeight;
+        viewX = other.viewX;
+        viewY = other.viewY;
+        scale = other.scale;
+        zooming = other.zooming;
+        firstRow = other.firstRow;
+        firstCol = other.firstCol;
+        windowRows = other.windowRows;
+        windowCols = other.windowCols;
+        size = other.size;
+        if (cells.length < size) {
+            cells = new int[size];
+        }
+        System.arraycopy(other.cells, 0, cells, 0, size);
+        tickTime = other.tickTime;
+        inputTime = other.inputTime;
+    }
+
+    /**
+     * @param animationSteps steps left in the frame
+     * @param interpolation  fraction of a tick elapsed since the frame was produced
+     * @param fadeTicks      length of the fade, in ticks
+     * @return alpha of a fading tile, between 0 and 255
+     */
+    static int fadeAlpha(int animationSteps, float interpolation, int fadeTicks) {
+        float remaining = Math.max(animationSteps - interpolation, 0);
+        return Math.min((int) (remaining * 255 / fadeTicks), 255);
+    }
+
+    /**
+     * @return alpha the face of the cell is drawn with, between 0 and 255; 0 once a solved tile has faded out
+     */
+    static int faceAlpha(int cell, float interpolation, int fadeTicks) {
+        if (Grid.stateOf(cell) != Tile.STATE_SOLVED) {
+            return 255;
+        }
+        int animationSteps = Grid.animationStepsOf(cell);
+        return animationSteps > 0 ? fadeAlpha(animationSteps, interpolation, fadeTicks) : 0;
+    }
+
+    /**
+     * @return left edge of the tile at index {@code i} of the window, in screen pixels
+     */
+    float tileLeft(int i) {
+        return ((firstCol + i % windowCols) * tileWidth - viewX) * scale;
+    }
+
+    float tileTop(int i) {
+        return ((firstRow + i / windowCols) * tileHeight - viewY) * scale;
+    }
+
+    /**
+     * Faces are drawn inside the tiles, in whole pixels so every renderer draws them the same size as the sprites.
+     */
+    float faceLeft(int i) {
+        return tileLeft(i) + FACE_MARGIN;
+    }
+
+    float faceTop(int i) {
+        return tileTop(i) + FACE_MARGIN;
+    }
+
+    int faceWidth() {
+        return (int) (tileWidth * scale) - 2 * FACE_MARGIN;
+    }
+
+    int faceHeight() {
+        return (int) (tileHeight * scale) - 2 * FACE_MARGIN;
+    }
+
+    /**
+     * @return true if tiles of the two frames are laid out the same way
+     */
+    boolean hasSameLayout(Frame other) {
+        return canvasWidth == other.canvasWidth && canvasHeight == other.canvasHeight
+                && rows == other.rows && cols == other.cols
+                && tileWidth == other.tileWidth && tileHeight == other.tileHeight
+                && viewX == other.viewX && viewY == other.viewY && scale == other.scale && zooming == other.zooming
+                && firstRow == other.firstRow && firstCol == other.firstCol
+                && windowRows == other.windowRows && windowCols == other.windowCols;
+    }
+}
@@ -0,0 +1,64 @@
+package catalinc.games.memory_game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer of {@link Frame}s between one producer and one consumer.
+ * <p/>
+ * The producer fills its back frame and publishes it; the consumer picks up the latest published frame. Neither
+ * side ever waits for the other, and frames published faster than they are consumed are skipped.
+ */
+public class FrameExchange {
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH      = 0x4;
+
+    private final Frame[]       frames;
+    // index of the frame in between, FRESH if published and not consumed yet
+    private final AtomicInteger middle;
+    // owned by the producer
+    private       int           back;
+    // owned by the consumer
+    private       int           front;
+
+    public FrameExchange() {
+        frames = new Frame[]{new Frame(), new Frame(), new Frame()};
+        back = 0;
+        front = 1;
+        middle = new AtomicInteger(2);
+    }
+
+    /**
+     * Producer side.
+     */
+    public Frame getBack() {
+        return frames[back];
+    }
+
+    /**
+     * Producer side, hands the back frame over and takes another one to fill.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Consumer side, makes the latest published frame the front one.
+     *
+     * @return true if a new frame was published since the previous call
+     */
+    public boolean acquire() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Consumer side.
+     */
+    public Frame getFront() {
+        return frames[front];
+    }
+}
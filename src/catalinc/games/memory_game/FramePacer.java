@@ -0,0 +1,156 @@
+package catalinc.games.memory_game;
+
+/**
+ * Picks the render frame rate, and the animation quality, from the measured cost of the frames.
+ * <p/>
+ * The rate steps down after {@link #OVERLOAD_FRAMES} consecutive frames whose smoothed cost exceeds the frame
+ * budget, and back up after {@link #RECOVER_FRAMES} frames cheap enough for the faster rate. Once at the lowest
+ * rate, sustained overload reduces the quality: animations are then only drawn on logic ticks. Frames are never
+ * scheduled closer than one interval apart, a late frame simply delays the next one, so falling behind cannot
+ * snowball.
+ * <p/>
+ * Free of Android and clocks, all times are passed in, in nanoseconds. Not thread safe, apart from the power saving
+ * and maximum rate settings.
+ */
+public class FramePacer {
+
+    public static final int QUALITY_FULL    = 0;
+    public static final int QUALITY_REDUCED = 1;
+
+    /**
+     * Supported rates, fastest first.
+     */
+    static final int[] RATES = {120, 60, 30};
+
+    static final int OVERLOAD_FRAMES = 30;
+    static final int RECOVER_FRAMES  = 120;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    // part of the budget a frame may use before counting as overloaded
+    private static final double OVERLOAD_RATIO = 0.9;
+    // part of the faster budget a frame may use to allow stepping up
+    private static final double RECOVER_RATIO  = 0.5;
+    private static final int    SMOOTHING      = 8;
+
+    private volatile int     fastestLevel;
+    private volatile boolean powerSaving;
+
+    private int    level;
+    private int    quality;
+    private double averageCost;
+    private int    overloaded;
+    private int    recovered;
+
+    /**
+     * @param maxRate fastest rate the display supports
+     */
+    public FramePacer(int maxRate) {
+        setMaxRate(maxRate);
+        level = fastestLevel;
+        quality = QUALITY_FULL;
+    }
+
+    /**
+     * @param maxRate rounded down to a supported rate, at least the slowest one
+     */
+    public void setMaxRate(int maxRate) {
+        int max = RATES.length - 1;
+        while (max > 0 && RATES[max - 1] <= maxRate) {
+            max--;
+        }
+        fastestLevel = max;
+    }
+
+    /**
+     * Caps the rate at the slowest one, for example when the battery is low or the device is hot.
+     */
+    public void setPowerSaving(boolean powerSaving) {
+        this.powerSaving = powerSaving;
+    }
+
+    public boolean isPowerSaving() {
+        return powerSaving;
+    }
+
+    public int getFrameRate() {
+        return RATES[level];
+    }
+
+    public long getFrameInterval() {
+        return NANOS_PER_SECOND / RATES[level];
+    }
+
+    /**
+     * @return {@link #QUALITY_FULL} or {@link #QUALITY_REDUCED}
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Records a drawn frame.
+     *
+     * @param start time the frame started
+     * @param cost  time spent producing it, without waiting for the display
+     * @param now   current time
+     * @return earliest time the next frame should start
+     */
+    public long onFrame(long start, long cost, long now) {
+        averageCost = averageCost == 0 ? cost : averageCost + (cost - averageCost) / SMOOTHING;
+        adapt();
+        long next = start + getFrameInterval();
+        return next > now ? next : now;
+    }
+
+    /**
+     * Forgets the history, for example after the thread was idle.
+     */
+    public void reset() {
+        averageCost = 0;
+        overloaded = 0;
+        recovered = 0;
+    }
+
+    private void adapt() {
+        int fastest = powerSaving ? RATES.length - 1 : fastestLevel;
+        if (level < fastest) {
+            level = fastest;
+            reset();
+            return;
+        }
+
+        if (averageCost > getFrameInterval() * OVERLOAD_RATIO) {
+            recovered = 0;
+            if (++overloaded >= OVERLOAD_FRAMES) {
+                overloaded = 0;
+                if (level < RATES.length - 1) {
+                    level++;
+                } else {
+                    quality = QUALITY_REDUCED;
+                }
+            }
+            return;
+        }
+        overloaded = 0;
+
+        boolean cheap;
+        if (quality == QUALITY_REDUCED) {
+            // reduced frames are much cheaper, so only recover if the full cost would fit too
+            cheap = averageCost < getFrameInterval() * RECOVER_RATIO / 2;
+        } else if (level > fastest) {
+            cheap = averageCost < NANOS_PER_SECOND / RATES[level - 1] * RECOVER_RATIO;
+        } else {
+            cheap = false;
+        }
+        if (!cheap) {
+            recovered = 0;
+        } else if (++recovered >= RECOVER_FRAMES) {
+            recovered = 0;
+            if (quality == QUALITY_REDUCED) {
+                quality = QUALITY_FULL;
+            } else {
+                level--;
+            }
+        }
+    }
+}
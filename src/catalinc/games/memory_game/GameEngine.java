@@ -0,0 +1,174 @@
+package catalinc.games.memory_game;
+
+import java.util.Random;
+
+/**
+ * One game session: the board, the solved pairs, the move count and the timer.
+ * <p/>
+ * Free of Android and threading; given the same seed, clock and moves it always ends in the same state.
+ * Not thread safe.
+ */
+public class GameEngine {
+
+    private final Random random;
+    private final Random shuffler;
+    private final Clock  clock;
+    private final int    fadeSteps;
+
+    private long      seed;
+    private Grid      grid;
+    private int       solved;
+    private int       moves;
+    private StopWatch stopWatch;
+    // cells with animation steps left, in no particular order, so a tick does not walk the whole board
+    private int[]     fading;
+    private int       fadingCount;
+
+    /**
+     * @param fadeSteps animation steps given to solved tiles, 0 when nothing is drawn
+     */
+    public GameEngine(Random random, Clock clock, int fadeSteps) {
+        this.random = random;
+        this.shuffler = new Random();
+        this.clock = clock;
+        this.fadeSteps = fadeSteps;
+        this.grid = Grid.EMPTY;
+        this.stopWatch = new StopWatch(clock);
+        this.fading = new int[0];
+    }
+
+    /**
+     * Deals a new board and starts the timer.
+     *
+     * @throws IllegalArgumentException if the board cannot be filled with pairs
+     */
+    public void newGame(int rows, int cols) {
+        newGame(rows, cols, random.nextLong());
+    }
+
+    /**
+     * Deals the board shuffled by {@code seed} and starts the timer. The same seed always deals the same board.
+     *
+     * @throws IllegalArgumentException if the board cannot be filled with pairs
+     */
+    public void newGame(int rows, int cols, long seed) {
+        if (!GameRules.isValidBoard(rows, cols)) {
+            throw new IllegalArgumentException("invalid board size " + rows + "x" + cols);
+        }
+        this.seed = seed;
+        grid = new Grid(rows, cols, 0, 0);
+        shuffler.setSeed(seed);
+        GameRules.setupGrid(grid, shuffler);
+        resetFading();
+        solved = 0;
+        moves = 0;
+        stopWatch.start();
+    }
+
+    /**
+     * Replaces the session with a saved one. The grid is used as is, not copied.
+     */
+    public void restore(Grid grid, int solved, int moves, StopWatch stopWatch) {
+        this.grid = grid;
+        this.solved = solved;
+        this.moves = moves;
+        this.stopWatch = stopWatch.copy(clock);
+        resetFading();
+        for (int i = 0; i < grid.size(); i++) {
+            if (grid.getAnimationSteps(i) > 0) {
+                fading[fadingCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * Plays the tile at {@code index}, see {@link GameRules#select(Grid, int, int)}.
+     *
+     * @return one of the {@code GameRules.MOVE_} constants
+     */
+    public int select(int index) {
+        int selected = grid.getSelectedIndex();
+        int move = GameRules.select(grid, index, fadeSteps);
+        if (move != GameRules.MOVE_IGNORED) {
+            moves++;
+        }
+        if (move == GameRules.MOVE_PAIR) {
+            solved += 2;
+            if (fadeSteps > 0) {
+                fading[fadingCount++] = selected;
+                fading[fadingCount++] = index;
+            }
+        }
+        return move;
+    }
+
+    public boolean isOver() {
+        return grid.size() > 0 && GameRules.allSolved(grid, solved);
+    }
+
+    /**
+     * Advances the animations by one step.
+     *
+     * @return true if some tile is still animating
+     */
+    public boolean tick() {
+        int kept = 0;
+        for (int n = 0; n < fadingCount; n++) {
+            int i = fading[n];
+            int animationSteps = grid.getAnimationSteps(i);
+            if (animationSteps > 0) {
+                grid.setAnimationSteps(i, animationSteps - 1);
+            }
+            if (animationSteps > 1) {
+                fading[kept++] = i;
+            }
+        }
+        fadingCount = kept;
+        return kept > 0;
+    }
+
+    /**
+     * Sized for the whole board, a tile only fades once, when it is solved.
+     */
+    private void resetFading() {
+        if (fading.length < grid.size()) {
+            fading = new int[grid.size()];
+        }
+        fadingCount = 0;
+    }
+
+    public void pause() {
+        stopWatch.pause();
+    }
+
+    public void resume() {
+        stopWatch.resume();
+    }
+
+    /**
+     * @return seed of the last board dealt by {@link #newGame(int, int, long)}, meaningless after a restore
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public Grid getGrid() {
+        return grid;
+    }
+
+    public int getSolved() {
+        return solved;
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public StopWatch getStopWatch() {
+        return stopWatch;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+}
@@ -0,0 +1,186 @@
+package catalinc.games.memory_game;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timings and counters of the game loop, all times in nanoseconds.
+ * <p/>
+ * Update times and tick counters are written by the game thread, frame, lock, draw and input latency times and the
+ * frame rate by the render thread. Reading from any other thread gives approximate values. For the same reason a
+ * reset is only requested; each thread clears the metrics it writes before it records the next ones.
+ */
+public class GameMetrics {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Histogram frameTime;
+    private final Histogram updateTime;
+    private final Histogram lockWaitTime;
+    private final Histogram drawTime;
+    private final Histogram inputLatency;
+
+    private volatile long lateTicks;
+    private volatile long droppedTicks;
+    private volatile long droppedTouches;
+    private volatile int  frameRate;
+    private volatile int  quality;
+
+    // resets requested and not applied yet by the game and by the render thread
+    private final AtomicBoolean gameResetPending;
+    private final AtomicBoolean renderResetPending;
+
+    public GameMetrics() {
+        frameTime = new Histogram();
+        updateTime = new Histogram();
+        lockWaitTime = new Histogram();
+        drawTime = new Histogram();
+        inputLatency = new Histogram();
+        gameResetPending = new AtomicBoolean();
+        renderResetPending = new AtomicBoolean();
+    }
+
+    /**
+     * Time between two consecutive posted frames.
+     */
+    public Histogram getFrameTime() {
+        return frameTime;
+    }
+
+    /**
+     * Time spent running the logic ticks of one loop iteration.
+     */
+    public Histogram getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * Time spent waiting for the surface to hand out a canvas.
+     */
+    public Histogram getLockWaitTime() {
+        return lockWaitTime;
+    }
+
+    public Histogram getDrawTime() {
+        return drawTime;
+    }
+
+    /**
+     * Time from a touch event to the frame that reflects it being posted. Touches whose frame was superseded before
+     * being drawn are not measured.
+     */
+    public Histogram getInputLatency() {
+        return inputLatency;
+    }
+
+    /**
+     * @return logic ticks that ran late, behind their deadline
+     */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    void addLateTicks(int ticks) {
+        lateTicks += ticks;
+    }
+
+    /**
+     * @return logic ticks skipped because the loop fell too far behind
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    void addDroppedTicks(long ticks) {
+        droppedTicks += ticks;
+    }
+
+    /**
+     * @return touches dropped because the input queue was full
+     */
+    public long getDroppedTouches() {
+        return droppedTouches;
+    }
+
+    void addDroppedTouches(long touches) {
+        droppedTouches += touches;
+    }
+
+    /**
+     * @return frame rate targeted by the render thread while animating
+     */
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return one of the {@code FramePacer.QUALITY_} constants
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    void setFrameRate(int frameRate, int quality) {
+        this.frameRate = frameRate;
+        this.quality = quality;
+    }
+
+    /**
+     * Asks the game and the render thread to clear their metrics, from any thread.
+     */
+    public void requestReset() {
+        gameResetPending.set(true);
+        renderResetPending.set(true);
+    }
+
+    /**
+     * Game thread, clears the update times and the tick and touch counters if a reset was requested.
+     */
+    void applyGameReset() {
+        if (gameResetPending.compareAndSet(true, false)) {
+            updateTime.reset();
+            lateTicks = 0;
+            droppedTicks = 0;
+            droppedTouches = 0;
+        }
+    }
+
+    /**
+     * Render thread, clears the frame, lock, draw and input latency times if a reset was requested.
+     */
+    void applyRenderReset() {
+        if (renderResetPending.compareAndSet(true, false)) {
+            frameTime.reset();
+            lockWaitTime.reset();
+            drawTime.reset();
+            inputLatency.reset();
+        }
+    }
+
+    /**
+     * Writes a plain text report, times in milliseconds.
+     */
+    public void writeTo(PrintWriter out) {
+        out.println("metric          count      mean       min       p50       p90       p99     p99.9       max");
+        writeHistogram(out, "frame", frameTime);
+        writeHistogram(out, "update", updateTime);
+        writeHistogram(out, "lock wait", lockWaitTime);
+        writeHistogram(out, "draw", drawTime);
+        writeHistogram(out, "input latency", inputLatency);
+        out.println("late ticks      " + lateTicks);
+        out.println("dropped ticks   " + droppedTicks);
+        out.println("dropped touches " + droppedTouches);
+        out.println("frame rate      " + frameRate
+                    + (quality == FramePacer.QUALITY_REDUCED ? " (reduced quality)" : ""));
+        out.flush();
+    }
+
+    private static void writeHistogram(PrintWriter out, String name, Histogram histogram) {
+        out.printf("%-13s %7d %9.3f %9.3f", name, histogram.getCount(),
+                   histogram.getMean() / 1e6, histogram.getMin() / 1e6);
+        for (double percentile : PERCENTILES) {
+            out.printf(" %9.3f", histogram.getValueAtPercentile(percentile) / 1e6);
+        }
+        out.printf(" %9.3f%n", histogram.getMax() / 1e6);
+    }
+}
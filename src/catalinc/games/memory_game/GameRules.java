@@ -0,0 +1,93 @@
+package catalinc.games.memory_game;
+
+import java.util.Random;
+
+/**
+ * Rules of the game, free of rendering, threading and Android dependencies.
+ */
+public class GameRules {
+
+    /**
+     * The move was outside the grid or on a tile that is not hidden.
+     */
+    public static final int MOVE_IGNORED  = 0;
+    /**
+     * The tile became the first of a pair.
+     */
+    public static final int MOVE_SELECTED = 1;
+    /**
+     * The tile did not match the selected one and replaced it as the selection.
+     */
+    public static final int MOVE_MISMATCH = 2;
+    /**
+     * The tile matched the selected one, both are solved.
+     */
+    public static final int MOVE_PAIR     = 3;
+
+    private GameRules() {
+    }
+
+    /**
+     * Fills the grid with shuffled hidden pairs, pair {@code n} has color {@code n}.
+     */
+    public static void setupGrid(Grid grid, Random random) {
+        int[] colors = new int[grid.size()];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = i / 2;
+        }
+        shuffle(colors, random);
+
+        for (int i = 0; i < colors.length; i++) {
+            grid.setTile(i, colors[i], Tile.STATE_HIDDEN);
+        }
+    }
+
+    /**
+     * Plays the tile at {@code index}.
+     *
+     * @param fadeSteps animation steps given to solved tiles
+     * @return one of the {@code MOVE_} constants
+     */
+    public static int select(Grid grid, int index, int fadeSteps) {
+        if (index < 0 || index >= grid.size() || grid.getState(index) != Tile.STATE_HIDDEN) {
+            return MOVE_IGNORED;
+        }
+        int selected = grid.getSelectedIndex();
+        if (selected < 0) {
+            grid.selectIndex(index);
+            return MOVE_SELECTED;
+        }
+        grid.clearSelectedTile();
+        if (grid.getColor(selected) != grid.getColor(index)) {
+            grid.selectIndex(index);
+            return MOVE_MISMATCH;
+        }
+        grid.setState(selected, Tile.STATE_SOLVED);
+        grid.setAnimationSteps(selected, fadeSteps);
+        grid.setState(index, Tile.STATE_SOLVED);
+        grid.setAnimationSteps(index, fadeSteps);
+        return MOVE_PAIR;
+    }
+
+    /**
+     * @return true if a board of that size can be filled with pairs
+     */
+    public static boolean isValidBoard(int rows, int cols) {
+        // the product of two large sizes may not fit an int
+        long tiles = (long) rows * cols;
+        return rows > 0 && cols > 0 && tiles % 2 == 0 && tiles <= Grid.MAX_TILES;
+    }
+
+    public static boolean allSolved(Grid grid, int solved) {
+        return solved == grid.size();
+    }
+
+    private static void shuffle(int[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package catalinc.games.memory_game;
+
+/**
+ * Immutable copy of the game state, published by the game thread for other threads to read.
+ */
+public class GameSnapshot {
+
+    private final int       state;
+    private final int       solved;
+    private final int       moves;
+    private final Grid      grid;
+    private final StopWatch stopWatch;
+
+    /**
+     * Takes ownership of {@code grid} and {@code stopWatch}, callers must pass copies they no longer touch.
+     */
+    public GameSnapshot(int state, int solved, int moves, Grid grid, StopWatch stopWatch) {
+        this.state = state;
+        this.solved = solved;
+        this.moves = moves;
+        this.grid = grid;
+        this.stopWatch = stopWatch;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public int getSolved() {
+        return solved;
+    }
+
+    /**
+     * @return moves played so far, the tie-break of equal times in the score ranking
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Must not be modified, take a {@link Grid#copy()} instead.
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Must not be modified, take a {@link StopWatch#copy()} instead.
+     */
+    public StopWatch getStopWatch() {
+        return stopWatch;
+    }
+}
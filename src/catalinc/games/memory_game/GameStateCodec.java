@@ -0,0 +1,254 @@
+package catalinc.games.memory_game;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact, versioned binary encoding of a {@link GameSnapshot}.
+ * <p/>
+ * Layout: version byte, varints for state, solved, moves, rows, cols and selected index + 1, a long for the
+ * elapsed time in nanoseconds, the tile colors as varints, then the tile states packed four per byte. Colors below
+ * 128 take one byte, so a board of up to 128 pairs takes about 1.25 bytes per tile, and larger boards up to about
+ * 3.25. Fade animations are not saved.
+ * <p/>
+ * Deltas carry the same header without the board size, followed by a count and (index, state) pairs of the tiles
+ * that changed. They are applied on top of a decoded snapshot.
+ * <p/>
+ * Decoded stop watches are paused.
+ * <p/>
+ * The bytes are read and written straight from a byte array: going through the synchronized in-memory streams a byte
+ * at a time made large boards several times slower than Java serialization.
+ */
+public class GameStateCodec {
+
+    public static final int VERSION = 1;
+
+    // version, six varints of at most five bytes and the elapsed time
+    private static final int MAX_HEADER_SIZE = 1 + 6 * 5 + 8;
+    private static final int MAX_COLOR_SIZE  = 3;
+
+    private GameStateCodec() {
+    }
+
+    public static byte[] encode(GameSnapshot snapshot) {
+        Grid grid = snapshot.getGrid();
+        int size = grid.size();
+        Buffer out = new Buffer(new byte[MAX_HEADER_SIZE + size * MAX_COLOR_SIZE + (size + 3) / 4]);
+        out.writeByte(VERSION);
+        out.writeVarInt(snapshot.getState());
+        out.writeVarInt(snapshot.getSolved());
+        out.writeVarInt(snapshot.getMoves());
+        out.writeVarInt(grid.getRows());
+        out.writeVarInt(grid.getCols());
+        out.writeVarInt(grid.getSelectedIndex() + 1);
+        out.writeLong(snapshot.getStopWatch().elapsedNanos());
+        for (int i = 0; i < size; i++) {
+            out.writeVarInt(grid.getColor(i));
+        }
+        int packed = 0;
+        for (int i = 0; i < size; i++) {
+            packed |= grid.getState(i) << ((i & 3) * 2);
+            if ((i & 3) == 3) {
+                out.writeByte(packed);
+                packed = 0;
+            }
+        }
+        if ((size & 3) != 0) {
+            out.writeByte(packed);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the data is truncated, corrupt or of an unknown version
+     */
+    public static GameSnapshot decode(byte[] data) throws IOException {
+        Buffer in = new Buffer(data);
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unknown save state version " + version);
+        }
+        int state = in.readVarInt();
+        int solved = in.readVarInt();
+        int moves = in.readVarInt();
+        int rows = in.readVarInt();
+        int cols = in.readVarInt();
+        int selected = in.readVarInt() - 1;
+        StopWatch stopWatch = readStopWatch(in);
+        // varints may decode to negative values, check them before sizing anything
+        if (rows < 1 || cols < 1 || (long) rows * cols > Grid.MAX_TILES) {
+            throw new IOException("corrupt save state, board " + rows + "x" + cols);
+        }
+        int size = rows * cols;
+        if (selected >= size || solved < 0 || solved > size || moves < 0) {
+            throw new IOException("corrupt save state");
+        }
+
+        int[] cells = new int[size];
+        for (int i = 0; i < size; i++) {
+            int color = in.readVarInt();
+            if (color < 0 || color >= Grid.MAX_COLORS) {
+                throw new IOException("corrupt save state, color " + color);
+            }
+            cells[i] = color;
+        }
+        Grid grid = new Grid(rows, cols, 0, 0);
+        int packed = 0;
+        for (int i = 0; i < size; i++) {
+            if ((i & 3) == 0) {
+                packed = in.readUnsignedByte();
+            }
+            int tileState = (packed >>> ((i & 3) * 2)) & 3;
+            if (tileState > Tile.STATE_SOLVED) {
+                throw new IOException("corrupt save state, tile state " + tileState);
+            }
+            grid.setTile(i, cells[i], tileState);
+        }
+        if (selected >= 0) {
+            grid.selectIndex(selected);
+        }
+
+        return new GameSnapshot(state, solved, moves, grid, stopWatch);
+    }
+
+    /**
+     * @param cells indices of the tiles changed since the previous snapshot or delta
+     */
+    public static byte[] encodeDelta(GameSnapshot snapshot, int[] cells, int count) {
+        return encodeDelta(snapshot.getState(), snapshot.getSolved(), snapshot.getMoves(), snapshot.getGrid(),
+                           snapshot.getStopWatch(), cells, count);
+    }
+
+    /**
+     * Encodes a delta straight from the live game, only the changed tiles of {@code grid} are read.
+     *
+     * @param cells indices of the tiles changed since the previous snapshot or delta
+     */
+    public static byte[] encodeDelta(int state, int solved, int moves, Grid grid, StopWatch stopWatch,
+                                     int[] cells, int count) {
+        Buffer out = new Buffer(new byte[MAX_HEADER_SIZE + count * 6]);
+        out.writeByte(VERSION);
+        out.writeVarInt(state);
+        out.writeVarInt(solved);
+        out.writeVarInt(moves);
+        out.writeVarInt(grid.getSelectedIndex() + 1);
+        out.writeLong(stopWatch.elapsedNanos());
+        out.writeVarInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeVarInt(cells[i]);
+            out.writeByte(grid.getState(cells[i]));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Applies a delta to {@code grid}, which is modified in place.
+     *
+     * @return snapshot of the resulting state, sharing {@code grid}
+     * @throws IOException if the data is truncated, corrupt, of an unknown version or does not fit the grid
+     */
+    public static GameSnapshot applyDelta(byte[] data, Grid grid) throws IOException {
+        Buffer in = new Buffer(data);
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unknown delta version " + version);
+        }
+        int state = in.readVarInt();
+        int solved = in.readVarInt();
+        int moves = in.readVarInt();
+        int selected = in.readVarInt() - 1;
+        StopWatch stopWatch = readStopWatch(in);
+        int count = in.readVarInt();
+        if (selected >= grid.size() || solved < 0 || solved > grid.size() || moves < 0 || count > grid.size()) {
+            throw new IOException("corrupt delta");
+        }
+
+        // the previous selection is always among the changed tiles, so its state is fixed below
+        grid.clearSelectedTile();
+        for (int i = 0; i < count; i++) {
+            int index = in.readVarInt();
+            int tileState = in.readUnsignedByte();
+            if (index < 0 || index >= grid.size() || tileState > Tile.STATE_SOLVED) {
+                throw new IOException("corrupt delta");
+            }
+            grid.setState(index, tileState);
+        }
+        if (selected >= 0) {
+            grid.selectIndex(selected);
+        }
+
+        return new GameSnapshot(state, solved, moves, grid, stopWatch);
+    }
+
+    private static StopWatch readStopWatch(Buffer in) throws IOException {
+        return new StopWatch(in.readLong(), Clock.SYSTEM);
+    }
+
+    /**
+     * Cursor over a byte array, sized up front when writing. Multi-byte values are big-endian, as with
+     * {@link java.io.DataOutputStream}.
+     */
+    private static final class Buffer {
+
+        private final byte[] data;
+
+        private int position;
+
+        Buffer(byte[] data) {
+            this.data = data;
+        }
+
+        void writeByte(int value) {
+            data[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                data[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                data[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[position++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, position);
+        }
+
+        int readUnsignedByte() throws IOException {
+            if (position == data.length) {
+                throw new EOFException();
+            }
+            return data[position++] & 0xff;
+        }
+
+        long readLong() throws IOException {
+            if (data.length - position < 8) {
+                throw new EOFException();
+            }
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[position++] & 0xff);
+            }
+            return value;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readUnsignedByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("malformed varint");
+        }
+    }
+}
@@ -2,397 +2,1151 @@ package catalinc.games.memory_game;
 
 import android.content.Context;
 import android.content.res.Resources;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.RectF;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.os.SystemClock;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
-import android.view.View;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Handles animation, game logic and user input.
+ * Handles animation and user input, and drives the game session kept by a {@link GameEngine}.
+ * <p/>
+ * The game state is owned by this thread. Calls from the UI thread never block: they are queued as commands
+ * and read back through an immutable {@link GameSnapshot}. Drawing happens on a separate {@link RenderThread},
+ * which receives a {@link Frame} through a lock-free {@link FrameExchange} after every tick that changed the board.
  */
 public class GameThread extends Thread {
 
     private final SurfaceHolder mSurfaceHolder;
-    private final Handler       mStatusHandler;
-    private final Handler       mScoreHandler;
-    private final Context       mContext;
+    private final Hud           mHud;
+
+    // status and score texts, looked up once
+    private final String        mTextReady;
+    private final String        mTextPause;
+    private final String        mTextGameOver;
+    private final String        mTextSolvedIn;
+    private final String        mTextMinute;
+    private final String        mTextMinutes;
+    private final String        mTextSecond;
+    private final String        mTextSeconds;
+    private final String        mTextBest;
+    private final String        mTextWaiting;
+    private final String        mTextYourTurn;
+    private final String        mTextTheirTurn;
+    private final String        mTextWin;
+    private final String        mTextLose;
+    private final String        mTextDraw;
+    private final String        mTextOpponentLeft;
+    private final String        mTextDisconnected;
+    private final String        mTextOnlineScore;
+    private final StringBuilder mScoreText;
+    private final char[]        mBestText;
 
     private static final int STATE_READY     = 0;
     private static final int STATE_PLAYING   = 1;
     private static final int STATE_PAUSE     = 2;
     private static final int STATE_GAME_OVER = 3;
+    private static final int STATE_REPLAY    = 4;
+    private static final int STATE_ONLINE    = 5;
+
+    private static final int INPUT_TOUCH    = 0;
+    private static final int INPUT_PAUSE    = 1;
+    private static final int INPUT_RESUME   = 2;
+    private static final int INPUT_NEW_GAME = 3;
+    private static final int INPUT_REPLAY   = 4;
+    private static final int INPUT_SEEK     = 5;
+    private static final int INPUT_ONLINE   = 6;
+
+    // messages of the match client, x and y carry the payload
+    private static final int REMOTE_START        = 0;
+    private static final int REMOTE_REVEAL       = 1;
+    private static final int REMOTE_END          = 2;
+    private static final int REMOTE_DISCONNECTED = 3;
 
     private volatile boolean mRun;
-    private final    Object  mRunLock;
-    private          int     mState;
+    private volatile int     mState;
 
     private int mCanvasHeight;
     private int mCanvasWidth;
+    // Grid.MIN_TILE_SIZE_DP in pixels of this screen
+    private final int mMinTileSize;
+
+    // rows << 32 | cols, written by the UI thread and read when a new grid is set up
+    private volatile long mBoardSize;
+
+    private final GameEngine mEngine;
+
+    private final InputQueue mInput;
+
+    // full copy of the game, published when written to the store or asked for by saveState()
+    private volatile GameSnapshot                  mSnapshot;
+    private          boolean                       mSnapshotStale;
+    private final    Object                        mSnapshotLock;
+    // set by the UI thread, cleared by the game thread once it published a snapshot; written under mSnapshotLock
+    private volatile boolean                       mSnapshotRequested;
+    private final    AtomicReference<GameSnapshot> mPendingRestore;
+    // width << 32 | height, or -1 if the size did not change
+    private final    AtomicLong                    mPendingSurfaceSize;
+
+    private final SnapshotStore mStore;
+    // tiles changed since the last persisted snapshot or delta
+    private       int[]         mChangedCells;
+    private       int           mChangedCount;
+    private       boolean       mGridReplaced;
+    private       int           mDeltaCount;
+
+    private final ScoreStore mScores;
 
-    private Paint[] mTilesColorPalette;
-    private Paint   mBackgroundPaint;
-    private Paint   mHiddenTilePaint;
-    private int     mRows;
-    private int     mCols;
+    // the game being played, or the last one, if it was started in this session
+    private final MoveLog mMoveLog;
+    // moves of the log already replayed
+    private       int     mReplayPosition;
 
-    private Grid mGrid;
-    private int  solved;
+    // connection handed over by the UI thread, not started yet
+    private final AtomicReference<OnlineConnection> mPendingOnline;
+    private       OnlineConnection                  mOnline;
+    // replica of the online match, only the revealed tiles have colors; null until the match starts
+    private       Match                             mMatch;
+    private       int                               mSeat;
 
-    private MotionEvent mTouchEvent;
+    // part of the board on screen, boards larger than the surface are panned and zoomed
+    private final Camera  mCamera;
+    private final Object  mGestureLock;
+    // gestures of the UI thread not applied to the camera yet, guarded by mGestureLock
+    private       float   mPendingPanX;
+    private       float   mPendingPanY;
+    private       float   mPendingZoom;
+    private       float   mPendingFocusX;
+    private       float   mPendingFocusY;
+    private       boolean mPendingZooming;
 
-    private StopWatch mStopWatch;
+    private final FrameExchange mFrames;
+    private final RenderThread  mRenderer;
+    // the frame must be published even if no cell changed
+    private       boolean       mFrameStale;
 
-    private static final int PHYS_FPS = 20;
+    private final GameMetrics mMetrics;
+    // touches the input queue dropped, as last added to the metrics
+    private       int         mDroppedTouches;
+    // event time of the oldest touch not handed to the renderer yet, 0 if none
+    private       long        mPendingInputTime;
+
+    private static final int PHYS_FPS            = 20;
+    private static final int TICK_MILLIS         = 1000 / PHYS_FPS;
+    private static final int MAX_TICKS_PER_FRAME = 5;
+    private static final int FADE_TICKS          = PHYS_FPS;
+    private static final int INPUT_CAPACITY      = 64;
+    private static final int REMOTE_CAPACITY     = 1024;
+    private static final int COMPACT_EVERY       = 64;
+    // how long saveState() waits for a snapshot of the live game before it saves the last one published
+    private static final long SNAPSHOT_WAIT_MILLIS = 200;
+
+    static final int DEFAULT_ROWS = 5;
+    static final int DEFAULT_COLS = 4;
 
 
     GameThread(final SurfaceHolder surfaceHolder,
                final Context context,
-               final Handler statusHandler,
-               final Handler scoreHandler) {
+               final Hud hud) {
         mSurfaceHolder = surfaceHolder;
-        mStatusHandler = statusHandler;
-        mScoreHandler = scoreHandler;
-        mContext = context;
+        mHud = hud;
+
+        Resources res = context.getResources();
+        mTextReady = res.getString(R.string.state_ready);
+        mTextPause = res.getString(R.string.state_pause);
+        mTextGameOver = res.getString(R.string.state_game_over);
+        mTextSolvedIn = res.getString(R.string.solved_in);
+        mTextMinute = res.getString(R.string.minute);
+        mTextMinutes = res.getString(R.string.minutes);
+        mTextSecond = res.getString(R.string.second);
+        mTextSeconds = res.getString(R.string.seconds);
+        mTextBest = res.getString(R.string.best);
+        mTextWaiting = res.getString(R.string.online_waiting);
+        mTextYourTurn = res.getString(R.string.online_your_turn);
+        mTextTheirTurn = res.getString(R.string.online_their_turn);
+        mTextWin = res.getString(R.string.online_win);
+        mTextLose = res.getString(R.string.online_lose);
+        mTextDraw = res.getString(R.string.online_draw);
+        mTextOpponentLeft = res.getString(R.string.online_opponent_left);
+        mTextDisconnected = res.getString(R.string.online_disconnected);
+        mTextOnlineScore = res.getString(R.string.online_score);
+        mScoreText = new StringBuilder();
+        mBestText = new char[16];
 
         mRun = false;
-        mRunLock = new Object();
         mState = STATE_READY;
 
         mCanvasHeight = 1;
         mCanvasWidth = 1;
+        mMinTileSize = Math.round(Grid.MIN_TILE_SIZE_DP * res.getDisplayMetrics().density);
+
+        setBoardSize(DEFAULT_ROWS, DEFAULT_COLS);
+
+        mEngine = new GameEngine(new Random(), Clock.SYSTEM, FADE_TICKS);
 
-        // based on Solarized color palette
-        mTilesColorPalette = new Paint[]{paintFromColorString("#002B36"),   // background
-                                         paintFromColorString("#073642"),   // hidden tile
-                                         paintFromColorString("#93a1a1"),   // tile...
-                                         paintFromColorString("#eee8d5"),
-                                         paintFromColorString("#b58900"),
-                                         paintFromColorString("#cb4b16"),
-                                         paintFromColorString("#dc322f"),
-                                         paintFromColorString("#d33682"),
-                                         paintFromColorString("#6c71c4"),
-                                         paintFromColorString("#268bd2"),
-                                         paintFromColorString("#2aa198"),
-                                         paintFromColorString("#859900")};  // ...color
+        mInput = new InputQueue(INPUT_CAPACITY);
+        mMetrics = new GameMetrics();
+        mPendingInputTime = 0;
 
-        mBackgroundPaint = mTilesColorPalette[0];
-        mHiddenTilePaint = mTilesColorPalette[1];
+        mSnapshot = newSnapshot();
+        mSnapshotStale = false;
+        mSnapshotLock = new Object();
+        mSnapshotRequested = false;
+        mPendingRestore = new AtomicReference<GameSnapshot>();
+        mPendingSurfaceSize = new AtomicLong(-1);
 
-        mRows = 5;
-        mCols = 4;
+        // shared with the game threads of earlier and later activities, see MemoryGameApplication
+        MemoryGameApplication application = (MemoryGameApplication) context.getApplicationContext();
+        mStore = application.getSnapshotStore();
+        mChangedCells = new int[8];
+        mChangedCount = 0;
+        mGridReplaced = false;
+        mDeltaCount = 0;
 
-        mGrid = Grid.EMPTY;
-        solved = 0;
+        mScores = application.getScoreStore();
 
-        mStopWatch = new StopWatch();
+        mMoveLog = new MoveLog();
+
+        mPendingOnline = new AtomicReference<OnlineConnection>();
+
+        mCamera = new Camera();
+        mGestureLock = new Object();
+        mPendingZoom = 1;
+
+        mFrames = new FrameExchange();
+        mRenderer = new RenderThread(surfaceHolder, mFrames, mMetrics, TICK_MILLIS, FADE_TICKS);
+        mFrameStale = true;
     }
 
     /**
-     * The game loop.
+     * The simulation loop. Game state advances in fixed ticks of {@link #TICK_MILLIS}; the render thread draws
+     * the published frames at its own pace and interpolates animations between ticks. When nothing is animating
+     * and no input is pending the thread parks until {@link #wakeUp()} is called.
      */
     @Override
     public void run() {
-        int skipTicks = 1000 / PHYS_FPS;
-        long mNextGameTick = SystemClock.uptimeMillis();
+        mRenderer.setRunning(true);
+        mRenderer.start();
+
+        long previousTime = SystemClock.uptimeMillis();
+        long lag = 0;
         while (mRun) {
-            Canvas canvas = null;
-            try {
-                canvas = mSurfaceHolder.lockCanvas(null);
-                if (canvas != null) {
-                    synchronized (mSurfaceHolder) {
-                        if (mState == STATE_PLAYING) {
-                            updateState();
-                        }
-                        synchronized (mRunLock) {
-                            if (mRun) {
-                                updateDisplay(canvas);
-                            }
-                        }
-                    }
+            long now = SystemClock.uptimeMillis();
+            lag += now - previousTime;
+            previousTime = now;
+
+            long updateStart = System.nanoTime();
+            mMetrics.applyGameReset();
+            applyPendingChanges();
+            int ticks = 0;
+            while (lag >= TICK_MILLIS) {
+                if (ticks == MAX_TICKS_PER_FRAME) {
+                    // too far behind, drop the backlog instead of trying to catch up
+                    mMetrics.addDroppedTicks(lag / TICK_MILLIS);
+                    lag = 0;
+                    break;
                 }
-            } finally {
-                if (canvas != null) {
-                    mSurfaceHolder.unlockCanvasAndPost(canvas);
+                updateState();
+                if (mState == STATE_REPLAY) {
+                    stepReplay();
                 }
+                mEngine.tick();
+                lag -= TICK_MILLIS;
+                ticks++;
             }
-            mNextGameTick += skipTicks;
-            long sleepTime = mNextGameTick - SystemClock.uptimeMillis();
-            if (sleepTime > 0) {
-                try {
-                    Thread.sleep(sleepTime);
-                } catch (InterruptedException e) {
-                    // don't care
+            // a replay ends in the state it started from and online matches can't be resumed, nothing to persist
+            if (mSnapshotStale && mState != STATE_REPLAY && mState != STATE_ONLINE) {
+                publishSnapshot();
+            }
+            if (mSnapshotRequested) {
+                answerSnapshotRequest();
+            }
+            if (ticks > 0 || mFrameStale) {
+                publishFrame(now - lag);
+            }
+            if (ticks > 0) {
+                mMetrics.getUpdateTime().record(System.nanoTime() - updateStart);
+                if (ticks > 1) {
+                    mMetrics.addLateTicks(ticks - 1);
                 }
             }
+            int droppedTouches = mInput.getDropped();
+            if (droppedTouches != mDroppedTouches) {
+                mMetrics.addDroppedTouches(droppedTouches - mDroppedTouches);
+                mDroppedTouches = droppedTouches;
+            }
+
+            // asked from the board, a move played without a tick in this pass may have started a fade
+            if (!mEngine.getGrid().isAnimating() && mInput.isEmpty() && mState != STATE_REPLAY
+                && (mOnline == null || mOnline.input.isEmpty())) {
+                LockSupport.park(this);
+                // nothing was animating, so there is no elapsed time to simulate; tick right away
+                previousTime = SystemClock.uptimeMillis();
+                lag = TICK_MILLIS;
+            } else {
+                sleepUntilNextTick(lag);
+            }
+        }
+
+        mRenderer.setRunning(false);
+        boolean retry = true;
+        while (retry) {
+            try {
+                mRenderer.join();
+                retry = false;
+            } catch (InterruptedException e) {
+                // don't care
+            }
         }
     }
 
-    void setRunning(boolean running) {
-        synchronized (mRunLock) {
-            mRun = running;
+    /**
+     * Hands the board to the render thread if it changed since the last frame.
+     *
+     * @param tickTime uptime of the last tick
+     */
+    private void publishFrame(long tickTime) {
+        Frame frame = mFrames.getBack();
+        boolean changed = frame.set(mEngine.getGrid(), mCamera, mCanvasWidth, mCanvasHeight,
+                                    tickTime, mPendingInputTime);
+        if (changed || mFrameStale) {
+            mFrames.publish();
+            mRenderer.wakeUp();
+            mFrameStale = false;
+            mPendingInputTime = 0;
         }
     }
 
+    private void sleepUntilNextTick(long lag) {
+        try {
+            Thread.sleep(TICK_MILLIS - lag);
+        } catch (InterruptedException e) {
+            // don't care
+        }
+    }
+
+    /**
+     * Wakes the game loop up if it is parked waiting for something to happen.
+     */
+    private void wakeUp() {
+        LockSupport.unpark(this);
+    }
+
+    void setRunning(boolean running) {
+        mRun = running;
+        wakeUp();
+    }
+
     void saveState(Bundle map) {
-        synchronized (mSurfaceHolder) {
-            map.putInt("state", mState);
-            map.putInt("solved", solved);
-            map.putSerializable("grid", mGrid);
-            map.putSerializable("stopWatch", mStopWatch);
+        map.putByteArray("game", GameStateCodec.encode(awaitSnapshot()));
+    }
+
+    /**
+     * Asks the game thread for a snapshot of the live game and waits a little for it; moves are persisted as deltas,
+     * so the board is only copied when asked for.
+     *
+     * @return the snapshot, or the last one published if the game thread did not answer in time
+     */
+    private GameSnapshot awaitSnapshot() {
+        if (!isAlive()) {
+            return mSnapshot;
         }
+        synchronized (mSnapshotLock) {
+            mSnapshotRequested = true;
+            wakeUp();
+            long deadline = SystemClock.uptimeMillis() + SNAPSHOT_WAIT_MILLIS;
+            long wait = SNAPSHOT_WAIT_MILLIS;
+            while (mSnapshotRequested && wait > 0) {
+                try {
+                    mSnapshotLock.wait(wait);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                wait = deadline - SystemClock.uptimeMillis();
+            }
+        }
+        return mSnapshot;
     }
 
     void restoreState(Bundle map) {
-        synchronized (mSurfaceHolder) {
-            setState(map.getInt("state"));
-            solved = map.getInt("solved");
-            mGrid = (Grid) map.getSerializable("grid");
-            mStopWatch = (StopWatch) map.getSerializable("stopWatch");
+        byte[] data = map.getByteArray("game");
+        if (data == null) {
+            return;
+        }
+        try {
+            // saved right after the pause was queued, possibly before the game thread applied it
+            restore(pausedIfPlaying(GameStateCodec.decode(data)));
+        } catch (IOException e) {
+            // unreadable state, keep the fresh game
         }
     }
 
-    void onTouch(MotionEvent event) {
-        synchronized (mSurfaceHolder) {
-            switch (mState) {
-                case STATE_READY:
-                    startNewGame();
-                    break;
-                case STATE_PLAYING:
-                    if (mTouchEvent == null) {
-                        mTouchEvent = event;
-                    }
-                    break;
-                case STATE_PAUSE:
-                    unPause();
-                    break;
-                case STATE_GAME_OVER:
-                    setState(STATE_READY);
+    /**
+     * Restores the game persisted by the last run, if any, once it is read in the background.
+     */
+    void restorePersistedState() {
+        mStore.load(new SnapshotStore.LoadCallback() {
+            @Override
+            public void onLoaded(GameSnapshot snapshot) {
+                // don't replace a game the player already started
+                if (snapshot != null && mState == STATE_READY) {
+                    // the time since the last move is unknown, resume from the last pause
+                    restore(pausedIfPlaying(snapshot));
+                }
             }
+        });
+    }
+
+    /**
+     * @return the snapshot, in the pause state if it was saved while playing; decoded stop watches are paused
+     */
+    private static GameSnapshot pausedIfPlaying(GameSnapshot snapshot) {
+        if (snapshot.getState() != STATE_PLAYING) {
+            return snapshot;
         }
+        return new GameSnapshot(STATE_PAUSE, snapshot.getSolved(), snapshot.getMoves(), snapshot.getGrid(),
+                                snapshot.getStopWatch());
     }
 
-    boolean onBack() {
-        synchronized (mSurfaceHolder) {
-            if (mState == STATE_PLAYING) {
-                pause();
-                return false;
+    /**
+     * @return live metrics of the game loop
+     */
+    GameMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Appends a report of the metrics to {@code file}, in the background, then starts measuring afresh so the next
+     * report covers the time since this one.
+     */
+    void dumpMetrics(final File file) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    PrintWriter out = new PrintWriter(new FileWriter(file, true));
+                    try {
+                        out.println("--- " + new Date());
+                        mMetrics.writeTo(out);
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    // diagnostics only
+                }
+                mMetrics.requestReset();
+                wakeUp();
+                mRenderer.wakeUp();
             }
-            return true;
+        }, "MetricsDump").start();
+    }
+
+    /**
+     * Starts the game loop the first time, afterwards only hands the new surface to the render thread.
+     */
+    void onSurfaceCreated() {
+        if (getState() == State.NEW) {
+            setRunning(true);
+            start();
         }
+        mRenderer.attachSurface();
     }
 
-    void pause() {
-        synchronized (mSurfaceHolder) {
-            if (mState == STATE_PLAYING) {
-                mStopWatch.pause();
-                setState(STATE_PAUSE);
+    /**
+     * Returns once the surface is no longer used. The game loop keeps running, or stays parked, with its state,
+     * paints and caches ready for the next surface.
+     */
+    void onSurfaceDestroyed() {
+        mRenderer.detachSurface();
+    }
+
+    /**
+     * Stops the game loop for good. The stores belong to the application and keep running, with the writes this
+     * thread queued ahead of those of the next one.
+     */
+    void release() {
+        setRunning(false);
+        boolean retry = isAlive();
+        while (retry) {
+            try {
+                join();
+                retry = false;
+            } catch (InterruptedException e) {
+                // don't care
             }
         }
+        OnlineConnection pending = mPendingOnline.getAndSet(null);
+        if (pending != null) {
+            pending.client.close();
+        }
+        if (mOnline != null) {
+            mOnline.client.close();
+        }
     }
 
-    void unPause() {
-        synchronized (mSurfaceHolder) {
-            mStopWatch.resume();
-            setState(STATE_PLAYING);
+    private void restore(GameSnapshot snapshot) {
+        mSnapshot = snapshot;
+        mPendingRestore.set(snapshot);
+        wakeUp();
+    }
+
+    /**
+     * Queues the touch for the game thread, never blocks. Like all the commands below, must be called from the
+     * UI thread only.
+     */
+    void onTouch(MotionEvent event) {
+        postInput(INPUT_TOUCH, event.getX(), event.getY(), event.getEventTime());
+    }
+
+    boolean onBack() {
+        if (mState == STATE_PLAYING) {
+            pause();
+            return false;
         }
+        return true;
+    }
+
+    void pause() {
+        postInput(INPUT_PAUSE, 0, 0, SystemClock.uptimeMillis());
+    }
+
+    void unPause() {
+        postInput(INPUT_RESUME, 0, 0, SystemClock.uptimeMillis());
     }
 
     void startNewGame() {
-        synchronized (mSurfaceHolder) {
-            setupGrid();
-            mStopWatch.start();
-            setState(STATE_PLAYING);
+        postInput(INPUT_NEW_GAME, 0, 0, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Replays the last game, if it is over and was played in this session. Touching the board ends the replay.
+     */
+    void startReplay() {
+        postInput(INPUT_REPLAY, 0, 0, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Jumps the running replay to the state after {@code move} moves.
+     */
+    void seekReplay(int move) {
+        postInput(INPUT_SEEK, move, 0, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Scrolls the board by {@code dx, dy} pixels, as reported by a scroll gesture.
+     */
+    void pan(float dx, float dy) {
+        synchronized (mGestureLock) {
+            mPendingPanX += dx;
+            mPendingPanY += dy;
+        }
+        wakeUp();
+    }
+
+    /**
+     * Zooms the board by {@code factor} around the focus point, as reported by a scale gesture.
+     */
+    void zoom(float factor, float focusX, float focusY) {
+        synchronized (mGestureLock) {
+            mPendingZoom *= factor;
+            mPendingFocusX = focusX;
+            mPendingFocusY = focusY;
+        }
+        wakeUp();
+    }
+
+    /**
+     * A scale gesture started or ended.
+     */
+    void setZooming(boolean zooming) {
+        synchronized (mGestureLock) {
+            mPendingZooming = zooming;
+        }
+        wakeUp();
+    }
+
+    /**
+     * Leaves the current game for a match against another player on a {@link MatchServer}, on a board of the size
+     * set by {@link #setBoardSize(int, int)}. Starting a new game leaves the match.
+     */
+    void playOnline(String host, int port) {
+        long boardSize = mBoardSize;
+        OnlineConnection replaced = mPendingOnline.getAndSet(
+                new OnlineConnection(host, port, (int) (boardSize >>> 32), (int) boardSize));
+        if (replaced != null) {
+            replaced.client.close();
+        }
+        postInput(INPUT_ONLINE, 0, 0, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Sets the size of the grids built by the next new games.
+     *
+     * @throws IllegalArgumentException if the board cannot be filled with pairs
+     */
+    void setBoardSize(int rows, int cols) {
+        if (!GameRules.isValidBoard(rows, cols)) {
+            throw new IllegalArgumentException("invalid board size " + rows + "x" + cols);
         }
+        mBoardSize = ((long) rows << 32) | cols;
+    }
+
+    /**
+     * @param renderMode {@link RenderThread#RENDER_CANVAS} or {@link RenderThread#RENDER_GL}, used from the next
+     *                   surface on, see {@link GameView#setRenderMode(int)}
+     */
+    void setRenderMode(int renderMode) {
+        mRenderer.setRenderMode(renderMode);
+    }
+
+    /**
+     * @return renderer in use, the canvas one if OpenGL could not be set up
+     */
+    int getRenderMode() {
+        return mRenderer.getRenderMode();
+    }
+
+    /**
+     * @param maxFrameRate refresh rate of the display
+     */
+    void setMaxFrameRate(int maxFrameRate) {
+        mRenderer.setMaxFrameRate(maxFrameRate);
+    }
+
+    /**
+     * Caps the frame rate, for example when the battery is low or the device is hot.
+     */
+    void setPowerSaving(boolean powerSaving) {
+        mRenderer.setPowerSaving(powerSaving);
     }
 
     void setSurfaceSize(int width, int height) {
-        synchronized (mSurfaceHolder) {
-            mCanvasWidth = width;
-            mCanvasHeight = height;
+        mPendingSurfaceSize.set(((long) width << 32) | (height & 0xffffffffL));
+        mRenderer.invalidate();
+        wakeUp();
+    }
+
+    private void postInput(int kind, float x, float y, long time) {
+        if (mInput.offer(kind, x, y, time)) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Applies surface size changes and restored state posted by the UI thread.
+     */
+    private void applyPendingChanges() {
+        long size = mPendingSurfaceSize.getAndSet(-1);
+        if (size != -1) {
+            mCanvasWidth = (int) (size >>> 32);
+            mCanvasHeight = (int) size;
+            mCamera.setViewSize(mCanvasWidth, mCanvasHeight);
             if (mState == STATE_PLAYING) {
-                mGrid.setCanvasWidth(mCanvasWidth);
-                mGrid.setCanvasHeight(mCanvasHeight);
+                resizeGrid();
+            }
+            mFrameStale = true;
+        }
+
+        GameSnapshot restored = mPendingRestore.getAndSet(null);
+        if (restored != null) {
+            mEngine.restore(restored.getGrid().copy(), restored.getSolved(), restored.getMoves(),
+                            restored.getStopWatch());
+            mMoveLog.clear();
+            if (restored.getState() == STATE_PLAYING) {
+                // decoded stop watches are paused
+                mEngine.resume();
             }
+            mGridReplaced = true;
+            resizeGrid();
+            mCamera.reset();
+            setState(restored.getState());
+            mFrameStale = true;
+        }
+
+        float panX, panY, zoom, focusX, focusY;
+        boolean zooming;
+        synchronized (mGestureLock) {
+            zooming = mPendingZooming;
+            panX = mPendingPanX;
+            panY = mPendingPanY;
+            zoom = mPendingZoom;
+            focusX = mPendingFocusX;
+            focusY = mPendingFocusY;
+            mPendingPanX = 0;
+            mPendingPanY = 0;
+            mPendingZoom = 1;
+        }
+        if (zoom != 1) {
+            mCamera.zoom(zoom, focusX, focusY);
+            mFrameStale = true;
+        }
+        if (zooming != mCamera.isZooming()) {
+            mCamera.setZooming(zooming);
+            mFrameStale = true;
         }
+        if (panX != 0 || panY != 0) {
+            mCamera.pan(panX, panY);
+            mFrameStale = true;
+        }
+    }
+
+    private void resizeGrid() {
+        Grid grid = mEngine.getGrid();
+        grid.setCanvasWidth(mCanvasWidth, mMinTileSize);
+        grid.setCanvasHeight(mCanvasHeight, mMinTileSize);
+        mCamera.setViewSize(mCanvasWidth, mCanvasHeight);
+        mCamera.setBoardSize(grid.getWidth(), grid.getHeight());
     }
 
-    private Paint paintFromColorString(String colorString) {
-        Paint paint = new Paint();
-        paint.setColor(Color.parseColor(colorString));
-        return paint;
+    private GameSnapshot newSnapshot() {
+        return new GameSnapshot(mState, mEngine.getSolved(), mEngine.getMoves(), mEngine.getGrid().copy(),
+                                mEngine.getStopWatch().copy());
     }
 
-    private void setupGrid() {
-        ArrayList<Tile> tiles = new ArrayList<Tile>();
-        for (int i = 2; i < mTilesColorPalette.length; i++) {
-            tiles.add(new Tile(i, Tile.STATE_HIDDEN));
-            tiles.add(new Tile(i, Tile.STATE_HIDDEN));
+    /**
+     * Persists the changes since the last call: now and then a full snapshot, otherwise a delta encoded from the live
+     * grid, a few bytes per changed tile instead of a copy of the board.
+     */
+    private void publishSnapshot() {
+        mSnapshotStale = false;
+
+        if (mGridReplaced || mDeltaCount >= COMPACT_EVERY) {
+            GameSnapshot snapshot = newSnapshot();
+            mSnapshot = snapshot;
+            mStore.writeSnapshot(snapshot);
+            mGridReplaced = false;
+            mDeltaCount = 0;
+        } else {
+            mStore.appendDelta(GameStateCodec.encodeDelta(mState, mEngine.getSolved(), mEngine.getMoves(),
+                                                          mEngine.getGrid(), mEngine.getStopWatch(),
+                                                          mChangedCells, mChangedCount));
+            mDeltaCount++;
         }
-        Collections.shuffle(tiles);
+        mChangedCount = 0;
+    }
 
-        mGrid = new Grid(mRows, mCols, mCanvasHeight, mCanvasWidth);
-        for (int row = 0; row < mRows; row++) {
-            for (int col = 0; col < mCols; col++) {
-                Tile tile = tiles.get(row * mCols + col);
-                mGrid.setTileAt(tile, row, col);
-            }
+    /**
+     * Publishes a snapshot for {@link #awaitSnapshot()}. Replays and online matches are not saved, the last snapshot
+     * published before them stands.
+     */
+    private void answerSnapshotRequest() {
+        if (mState != STATE_REPLAY && mState != STATE_ONLINE) {
+            mSnapshot = newSnapshot();
+        }
+        synchronized (mSnapshotLock) {
+            mSnapshotRequested = false;
+            mSnapshotLock.notifyAll();
+        }
+    }
+
+    private void recordChange(int index) {
+        if (mChangedCount == mChangedCells.length) {
+            mChangedCells = Arrays.copyOf(mChangedCells, mChangedCount * 2);
+        }
+        mChangedCells[mChangedCount++] = index;
+    }
+
+    private void doPause() {
+        if (mState == STATE_REPLAY) {
+            endReplay();
+        } else if (mState == STATE_PLAYING) {
+            mEngine.pause();
+            setState(STATE_PAUSE);
+        }
+    }
+
+    private void doUnPause() {
+        if (mState == STATE_ONLINE) {
+            return;
+        }
+        mEngine.resume();
+        setState(STATE_PLAYING);
+    }
+
+    private void doStartNewGame() {
+        leaveOnline();
+        long boardSize = mBoardSize;
+        int rows = (int) (boardSize >>> 32);
+        int cols = (int) boardSize;
+        mEngine.newGame(rows, cols);
+        mMoveLog.start(rows, cols, mEngine.getSeed());
+        resizeGrid();
+        mCamera.reset();
+        mGridReplaced = true;
+        mFrameStale = true;
+        setState(STATE_PLAYING);
+    }
+
+    private void doStartReplay() {
+        if ((mState == STATE_GAME_OVER || mState == STATE_READY) && mMoveLog.getMoveCount() > 0) {
+            replayTo(0);
+            setState(STATE_REPLAY);
+        }
+    }
+
+    private void doSeekReplay(int move) {
+        if (mState == STATE_REPLAY) {
+            replayTo(move);
+        }
+    }
+
+    /**
+     * Puts the engine in the state after {@code move} moves of the log and lets the replay go on from there.
+     */
+    private void replayTo(int move) {
+        mMoveLog.seek(mEngine, move);
+        mEngine.resume();
+        mReplayPosition = mEngine.getMoves();
+        resizeGrid();
+        mGridReplaced = true;
+        mFrameStale = true;
+        mHud.setStopWatch(mEngine.getStopWatch());
+        mHud.setMoves(mEngine.getMoves());
+        updateReplayBar();
+    }
+
+    /**
+     * Plays the logged moves whose time has come, by the replay timer.
+     */
+    private void stepReplay() {
+        MoveLog log = mMoveLog;
+        long elapsed = mEngine.getStopWatch().elapsed();
+        int position = mReplayPosition;
+        while (position < log.getMoveCount() && log.getElapsedMillis(position) <= elapsed) {
+            mEngine.select(log.getTile(position++));
+        }
+        if (position != mReplayPosition) {
+            mReplayPosition = position;
+            mHud.setMoves(mEngine.getMoves());
+            updateReplayBar();
+        }
+        if (position == log.getMoveCount()) {
+            setState(STATE_GAME_OVER);
         }
+    }
+
+    private void endReplay() {
+        replayTo(mMoveLog.getMoveCount());
+        setState(STATE_GAME_OVER);
+    }
 
-        solved = 0;
+    /**
+     * Shows the replay position on the replay bar, which is hidden when not replaying.
+     */
+    private void updateReplayBar() {
+        mHud.setReplay(mReplayPosition, mState == STATE_REPLAY ? mMoveLog.getMoveCount() : 0);
     }
 
     private void setState(int mode) {
-        synchronized (mSurfaceHolder) {
-            mState = mode;
-            Resources res = mContext.getResources();
-            switch (mState) {
-                case STATE_READY:
-                    hideScoreText();
-                    setStatusText(res.getString(R.string.state_ready));
-                    break;
-                case STATE_PLAYING:
-                    hideStatusText();
-                    break;
-                case STATE_PAUSE:
-                    setStatusText(res.getString(R.string.state_pause));
-                    break;
-                case STATE_GAME_OVER:
-                    long elapsed = mStopWatch.elapsed() / 1000;
-                    long minutes = elapsed / 60;
-                    long seconds = elapsed - minutes * 60;
-                    StringBuilder scoreText = new StringBuilder();
+        mState = mode;
+        mSnapshotStale = true;
+        switch (mState) {
+            case STATE_READY:
+                mHud.setScore(null);
+                mHud.setStatus(mTextReady);
+                break;
+            case STATE_PLAYING:
+                mHud.setStatus(null);
+                break;
+            case STATE_REPLAY:
+            case STATE_ONLINE:
+                mHud.setScore(null);
+                mHud.setStatus(null);
+                break;
+            case STATE_PAUSE:
+                mHud.setStatus(mTextPause);
+                break;
+            case STATE_GAME_OVER:
+                mEngine.pause();
+                long elapsed = mEngine.getStopWatch().elapsed() / 1000;
+                long minutes = elapsed / 60;
+                long seconds = elapsed - minutes * 60;
+                StringBuilder scoreText = mScoreText;
+                scoreText.setLength(0);
 
-                    scoreText.append(res.getString(R.string.solved_in))
+                scoreText.append(mTextSolvedIn)
+                         .append(' ');
+                if (minutes > 0) {
+                    scoreText.append(minutes)
+                             .append(' ')
+                             .append(minutes == 1 ? mTextMinute : mTextMinutes)
                              .append(' ');
-                    if (minutes > 0) {
-                        scoreText.append(minutes)
-                                 .append(' ')
-                                 .append(minutes == 1 ?
-                                         res.getString(R.string.minute) : res.getString(R.string.minutes))
-                                 .append(' ');
-                    }
-                    scoreText.append(seconds)
+                }
+                scoreText.append(seconds)
+                         .append(' ')
+                         .append(seconds == 1 ? mTextSecond : mTextSeconds);
+
+                Grid grid = mEngine.getGrid();
+                List<Score> best = mScores.getTop(grid.getRows(), grid.getCols(), 1);
+                if (!best.isEmpty()) {
+                    int length = StopWatch.format(best.get(0).getElapsed(), mBestText);
+                    scoreText.append('\n')
+                             .append(mTextBest)
                              .append(' ')
-                             .append(seconds == 1 ?
-                                     res.getString(R.string.second) : res.getString(R.string.seconds));
+                             .append(mBestText, 0, length);
+                }
 
-                    setStatusText(res.getString(R.string.state_game_over));
-                    setScoreText(scoreText.toString());
+                mHud.setStatus(mTextGameOver);
+                mHud.setScore(scoreText.toString());
 
-            }
         }
+        mHud.setStopWatch(mEngine.getStopWatch());
+        mHud.setMoves(mEngine.getMoves());
+        updateReplayBar();
     }
 
     private void updateState() {
-        if (mTouchEvent != null) {
-            Tile touched = mGrid.getTileAtPoint(mTouchEvent.getX(), mTouchEvent.getY());
-            if (touched != null && touched.getState() == Tile.STATE_HIDDEN) {
-                Tile selected = mGrid.getSelectedTile();
-                if (selected != null) {
-                    mGrid.clearSelectedTile();
-                    if (selected.getColor() == touched.getColor()) { // found a pair
-                        selected.setState(Tile.STATE_SOLVED);
-                        selected.setAnimationSteps(PHYS_FPS);
-                        touched.setState(Tile.STATE_SOLVED);
-                        touched.setAnimationSteps(PHYS_FPS);
-                        solved += 2;
-                        if (allSolved()) {
-                            setState(STATE_GAME_OVER);
-                        }
-                    } else {
-                        mGrid.selectTile(touched);
+        while (!mInput.isEmpty()) {
+            int kind = mInput.peekKind();
+            float x = mInput.peekX();
+            float y = mInput.peekY();
+            long time = mInput.peekTime();
+            mInput.remove();
+            switch (kind) {
+                case INPUT_TOUCH:
+                    if (mPendingInputTime == 0) {
+                        mPendingInputTime = time;
                     }
-                } else {
-                    mGrid.selectTile(touched);
-                }
+                    handleTouch(x, y);
+                    break;
+                case INPUT_PAUSE:
+                    doPause();
+                    break;
+                case INPUT_RESUME:
+                    doUnPause();
+                    break;
+                case INPUT_NEW_GAME:
+                    doStartNewGame();
+                    break;
+                case INPUT_REPLAY:
+                    doStartReplay();
+                    break;
+                case INPUT_SEEK:
+                    doSeekReplay((int) x);
+                    break;
+                case INPUT_ONLINE:
+                    doPlayOnline();
             }
-            mTouchEvent = null;
-        }
-    }
-
-    private boolean allSolved() {
-        return solved == mGrid.getRows() * mGrid.getCols();
-    }
-
-    private void updateDisplay(Canvas canvas) {
-        canvas.drawColor(mBackgroundPaint.getColor());
-
-        // draw grid tiles
-        for (int row = 0; row < mGrid.getRows(); row++) {
-            for (int col = 0; col < mGrid.getCols(); col++) {
-                Tile tile = mGrid.getTileAt(row, col);
-
-                int left = col * mGrid.getTileWidth();
-                int top = row * mGrid.getTileHeight();
-                RectF rect = new RectF(left + 2, top + 2, left + mGrid.getTileWidth() - 2, top + mGrid.getTileHeight() - 2);
-
-                Paint paint;
-                switch (tile.getState()) {
-                    case Tile.STATE_HIDDEN:
-                        paint = mHiddenTilePaint;
-                        break;
-                    case Tile.STATE_SOLVED:
-                        int animationSteps = tile.getAnimationSteps();
-                        if (animationSteps > 0) {
-                            paint = new Paint(mTilesColorPalette[tile.getColor()]);
-                            paint.setAlpha(animationSteps * (255 / PHYS_FPS));
-                            tile.setAnimationSteps(animationSteps - 1);
-                        } else {
-                            paint = mBackgroundPaint;
-                        }
-                        break;
-                    case Tile.STATE_SELECTED:
-                    default:
-                        paint = mTilesColorPalette[tile.getColor()];
-                }
-                canvas.drawRoundRect(rect, 2, 2, paint);
+        }
+
+        OnlineConnection online = mOnline;
+        if (online != null && online.input.getDropped() > 0) {
+            leaveOnline();
+            setState(STATE_READY);
+            mHud.setStatus(mTextDisconnected);
+            return;
+        }
+        while (online != null && !online.input.isEmpty()) {
+            int kind = online.input.peekKind();
+            int x = (int) online.input.peekX();
+            int y = (int) online.input.peekY();
+            long time = online.input.peekTime();
+            online.input.remove();
+            switch (kind) {
+                case REMOTE_START:
+                    onMatchStarted(x, y, (int) time);
+                    break;
+                case REMOTE_REVEAL:
+                    onMatchReveal(x, y);
+                    break;
+                case REMOTE_END:
+                    onMatchEnded(x, y, (int) time);
+                    break;
+                case REMOTE_DISCONNECTED:
+                    leaveOnline();
+                    setState(STATE_READY);
+                    mHud.setStatus(mTextDisconnected);
+            }
+            if (mOnline != online) {
+                // the match is over, whatever its client still has to say
+                break;
             }
         }
+    }
 
+    private void doPlayOnline() {
+        OnlineConnection online = mPendingOnline.getAndSet(null);
+        if (online == null) {
+            return;
+        }
+        leaveOnline();
+        mOnline = online;
+        mMoveLog.clear();
+        online.client.start();
+        setState(STATE_ONLINE);
+        mHud.setStatus(mTextWaiting);
     }
 
-    private void setStatusText(String text) {
-        Message msg = mStatusHandler.obtainMessage();
-        Bundle b = new Bundle();
-        b.putString("text", text);
-        b.putInt("vis", View.VISIBLE);
-        msg.setData(b);
-        mStatusHandler.sendMessage(msg);
+    /**
+     * Closes the connection to the match server, if any; a match in progress is lost by forfeit.
+     */
+    private void leaveOnline() {
+        if (mOnline != null) {
+            mOnline.client.close();
+            mOnline = null;
+        }
+        mMatch = null;
     }
 
-    private void hideStatusText() {
-        Message msg = mStatusHandler.obtainMessage();
-        Bundle b = new Bundle();
-        b.putInt("vis", View.INVISIBLE);
-        msg.setData(b);
-        mStatusHandler.sendMessage(msg);
+    private void onMatchStarted(int rows, int cols, int seat) {
+        // colors are filled in as the server reveals the tiles
+        mEngine.restore(new Grid(rows, cols, 0, 0), 0, 0, new StopWatch(0, mEngine.getClock()));
+        mEngine.resume();
+        mMatch = new Match(mEngine.getGrid(), FADE_TICKS);
+        mSeat = seat;
+        resizeGrid();
+        mCamera.reset();
+        mFrameStale = true;
+        mHud.setStopWatch(mEngine.getStopWatch());
+        mHud.setMoves(0);
+        updateMatchHud();
     }
 
-    private void setScoreText(String text) {
-        Message msg = mScoreHandler.obtainMessage();
-        Bundle b = new Bundle();
-        b.putString("text", text);
-        b.putInt("vis", View.VISIBLE);
-        msg.setData(b);
-        mScoreHandler.sendMessage(msg);
+    private void onMatchReveal(int tile, int color) {
+        Match match = mMatch;
+        if (match == null || tile < 0 || tile >= match.getGrid().size()) {
+            return;
+        }
+        match.getGrid().setTile(tile, color, Tile.STATE_HIDDEN);
+        match.play(match.getTurn(), tile);
+        mHud.setMoves(match.getMoves());
+        updateMatchHud();
     }
 
-    private void hideScoreText() {
-        Message msg = mScoreHandler.obtainMessage();
-        Bundle b = new Bundle();
-        b.putInt("vis", View.INVISIBLE);
-        msg.setData(b);
-        mScoreHandler.sendMessage(msg);
+    private void onMatchEnded(int score0, int score1, int forfeit) {
+        leaveOnline();
+        mEngine.pause();
+        setState(STATE_READY);
+
+        int mine = mSeat == 0 ? score0 : score1;
+        int theirs = mSeat == 0 ? score1 : score0;
+        if (forfeit >= 0 && forfeit != mSeat) {
+            mHud.setStatus(mTextOpponentLeft);
+        } else if (mine == theirs) {
+            mHud.setStatus(mTextDraw);
+        } else {
+            mHud.setStatus(mine > theirs ? mTextWin : mTextLose);
+        }
+        mHud.setScore(String.format(mTextOnlineScore, mine, theirs));
+    }
+
+    private void updateMatchHud() {
+        Match match = mMatch;
+        mHud.setStatus(match.getTurn() == mSeat ? mTextYourTurn : mTextTheirTurn);
+        mHud.setScore(String.format(mTextOnlineScore, match.getScore(mSeat),
+                                    match.getScore((mSeat + 1) % Match.SEATS)));
+    }
+
+    /**
+     * Sends the touched tile to the server, which reveals it to both players if it is a valid move.
+     */
+    private void onOnlineTileTouched(float x, float y) {
+        Match match = mMatch;
+        if (match == null || match.getTurn() != mSeat) {
+            return;
+        }
+        int touched = match.getGrid().indexAtPoint(x, y, mCamera);
+        if (touched >= 0 && match.getGrid().getState(touched) == Tile.STATE_HIDDEN) {
+            // queued, the client thread writes it and reports a lost connection
+            mOnline.client.sendMove(touched);
+        }
+    }
+
+    private void handleTouch(float x, float y) {
+        switch (mState) {
+            case STATE_READY:
+                doStartNewGame();
+                break;
+            case STATE_PLAYING:
+                onTileTouched(x, y);
+                break;
+            case STATE_PAUSE:
+                doUnPause();
+                break;
+            case STATE_GAME_OVER:
+                setState(STATE_READY);
+                break;
+            case STATE_REPLAY:
+                endReplay();
+                break;
+            case STATE_ONLINE:
+                onOnlineTileTouched(x, y);
+        }
+    }
+
+    private void onTileTouched(float x, float y) {
+        Grid grid = mEngine.getGrid();
+        int touched = grid.indexAtPoint(x, y, mCamera);
+        int selected = grid.getSelectedIndex();
+        int move = mEngine.select(touched);
+        if (move == GameRules.MOVE_IGNORED) {
+            return;
+        }
+        mMoveLog.record(grid, touched, move, mEngine.getStopWatch().elapsed());
+        mHud.setMoves(mEngine.getMoves());
+        recordChange(touched);
+        if (selected >= 0) {
+            recordChange(selected);
+        }
+        mSnapshotStale = true;
+        if (move == GameRules.MOVE_PAIR && mEngine.isOver()) {
+            mEngine.pause();
+            mScores.add(new Score(grid.getRows(), grid.getCols(), System.currentTimeMillis(),
+                                  (int) mEngine.getStopWatch().elapsed(), mEngine.getMoves()));
+            setState(STATE_GAME_OVER);
+        }
     }
 
+    /**
+     * A match client and the queue its messages reach the game thread through.
+     */
+    private class OnlineConnection implements MatchClient.Listener {
+
+        final InputQueue  input;
+        final MatchClient client;
+
+        OnlineConnection(String host, int port, int rows, int cols) {
+            input = new InputQueue(REMOTE_CAPACITY);
+            client = new MatchClient(host, port, rows, cols, this);
+        }
+
+        @Override
+        public void onStart(int rows, int cols, int seat) {
+            post(REMOTE_START, rows, cols, seat);
+        }
+
+        @Override
+        public void onReveal(int tile, int color) {
+            post(REMOTE_REVEAL, tile, color, 0);
+        }
+
+        @Override
+        public void onEnd(int score0, int score1, int forfeit) {
+            post(REMOTE_END, score0, score1, forfeit);
+        }
+
+        @Override
+        public void onDisconnected() {
+            post(REMOTE_DISCONNECTED, 0, 0, 0);
+        }
+
+        private void post(int kind, int x, int y, long time) {
+            if (!input.offer(kind, x, y, time)) {
+                // a lost reveal would leave the replica out of sync, give the match up
+                client.close();
+            }
+            wakeUp();
+        }
+    }
 }
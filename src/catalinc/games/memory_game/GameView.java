@@ -1,21 +1,30 @@
 package catalinc.games.memory_game;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Message;
 import android.util.AttributeSet;
+import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
+import android.view.ViewConfiguration;
+import android.widget.SeekBar;
 import android.widget.TextView;
 
 public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 
     private GameThread mGameThread;
 
-    private TextView mStatusView;
+    private final Hud mHud;
 
-    private TextView mScoreView;
+    private boolean mHasSurface;
+    // hidden to get a new surface for another renderer, shown again once the old one is gone
+    private boolean mRecreatingSurface;
+
+    // taps touch tiles, scrolls and pinches move the camera over boards larger than the screen
+    private final TapDetector          mTaps;
+    private final GestureDetector      mGestures;
+    private final ScaleGestureDetector mScaleGestures;
 
     public GameView(Context context, AttributeSet attributeSet) {
         super(context, attributeSet);
@@ -23,32 +32,103 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
         SurfaceHolder holder = getHolder();
         holder.addCallback(this);
 
-        mGameThread = new GameThread(holder, context,
-                                     new Handler() {
-                                         @Override
-                                         public void handleMessage(Message m) {
-                                             mStatusView.setVisibility(m.getData().getInt("vis"));
-                                             mStatusView.setText(m.getData().getString("text"));
-                                         }
-                                     },
-                                     new Handler() {
-                                         @Override
-                                         public void handleMessage(Message m) {
-                                             mScoreView.setVisibility(m.getData().getInt("vis"));
-                                             mScoreView.setText(m.getData().getString("text"));
-                                         }
-                                     }
-        );
+        mHud = new Hud(context);
+        mGameThread = new GameThread(holder, context, mHud);
+
+        mTaps = new TapDetector(ViewConfiguration.get(context).getScaledTouchSlop());
+        mGestures = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent event) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent first, MotionEvent last, float distanceX, float distanceY) {
+                mGameThread.pan(distanceX, distanceY);
+                return true;
+            }
+        });
+        // only scrolls are taken from it; a long press or a quick second touch would stop it from reporting them
+        mGestures.setIsLongpressEnabled(false);
+        mGestures.setOnDoubleTapListener(null);
+        mScaleGestures = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                mGameThread.setZooming(true);
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                mGameThread.zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+
+            @Override
+            public void onScaleEnd(ScaleGestureDetector detector) {
+                mGameThread.setZooming(false);
+            }
+        });
 
         setFocusable(true);
     }
 
     public void setStatusView(TextView textView) {
-        mStatusView = textView;
+        mHud.setStatusView(textView);
     }
 
     public void setScoreView(TextView textView) {
-        mScoreView = textView;
+        mHud.setScoreView(textView);
+    }
+
+    public void setTimerView(TextView textView) {
+        mHud.setTimerView(textView);
+    }
+
+    /**
+     * Dragging the bar jumps the running replay to the move under the thumb.
+     */
+    public void setReplayView(SeekBar seekBar) {
+        mHud.setReplayView(seekBar);
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    mGameThread.seekReplay(progress);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                mHud.setReplayTracking(true);
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                mHud.setReplayTracking(false);
+            }
+        });
+    }
+
+    /**
+     * Switches to client mode: the board is played against another player through a {@link MatchServer}.
+     */
+    public void playOnline(String host, int port) {
+        mGameThread.playOnline(host, port);
+    }
+
+    /**
+     * Switches the renderer. A surface once drawn on with a canvas cannot be used with OpenGL, so the view is hidden
+     * until its surface is destroyed and shown again to get a fresh one.
+     *
+     * @param renderMode {@link RenderThread#RENDER_CANVAS} or {@link RenderThread#RENDER_GL}
+     */
+    public void setRenderMode(int renderMode) {
+        mGameThread.setRenderMode(renderMode);
+        if (mHasSurface && !mRecreatingSurface && mGameThread.getRenderMode() != renderMode) {
+            mRecreatingSurface = true;
+            setVisibility(INVISIBLE);
+        }
     }
 
     @Override
@@ -65,28 +145,49 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
-        mGameThread.setRunning(true);
-        mGameThread.start();
+        mHasSurface = true;
+        mGameThread.onSurfaceCreated();
+        mHud.start();
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
-        boolean retry = true;
-        mGameThread.setRunning(false);
-        while (retry) {
-            try {
-                mGameThread.join();
-                retry = false;
-            } catch (InterruptedException e) {
-                // don't care
-            }
+        mHud.stop();
+        mGameThread.onSurfaceDestroyed();
+        mHasSurface = false;
+        if (mRecreatingSurface) {
+            mRecreatingSurface = false;
+            // after the surface callbacks are done
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    setVisibility(VISIBLE);
+                }
+            });
         }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_UP) {
-            mGameThread.onTouch(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mTaps.onDown(event.getX(), event.getY());
+                break;
+            case MotionEvent.ACTION_MOVE:
+                mTaps.onMove(event.getX(), event.getY());
+                break;
+            case MotionEvent.ACTION_UP:
+                if (mTaps.onUp(event.getX(), event.getY())) {
+                    mGameThread.onTouch(event);
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_CANCEL:
+                mTaps.cancel();
+        }
+        mScaleGestures.onTouchEvent(event);
+        if (!mScaleGestures.isInProgress()) {
+            mGestures.onTouchEvent(event);
         }
         return true;
     }
@@ -0,0 +1,261 @@
+package catalinc.games.memory_game;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * OpenGL ES 2.0 renderer. Every tile, glyph included, is turned into colored triangles by a {@link TileMesh} and
+ * the whole board is drawn with a single {@code glDrawArrays} call.
+ * <p/>
+ * Tiles are drawn with square corners. Since the back buffer content is undefined after a swap, every frame that
+ * differs from the one on screen is drawn in full.
+ */
+public class GlTileRenderer implements TileRenderer {
+
+    private static final String TAG = "GlTileRenderer";
+
+    private static final String VERTEX_SHADER =
+            "uniform vec2 uScale;\n" +
+            "attribute vec2 aPosition;\n" +
+            "attribute vec4 aColor;\n" +
+            "varying vec4 vColor;\n" +
+            "void main() {\n" +
+            "    vColor = aColor;\n" +
+            "    gl_Position = vec4(aPosition * uScale + vec2(-1.0, 1.0), 0.0, 1.0);\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "varying vec4 vColor;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vColor;\n" +
+            "}\n";
+
+    private static final int STRIDE = TileMesh.FLOATS_PER_VERTEX * 4;
+
+    private final SurfaceHolder mSurfaceHolder;
+    private final GameMetrics   mMetrics;
+    private final int           mBackgroundColor;
+    private final TileMesh      mMesh;
+
+    private EGLDisplay mDisplay;
+    private EGLContext mContext;
+    private EGLSurface mSurface;
+
+    private int mProgram;
+    private int mPositionAttribute;
+    private int mColorAttribute;
+    private int mScaleUniform;
+
+    private FloatBuffer mVertexBuffer;
+
+    // what is on screen
+    private final Frame   mDrawn;
+    private       boolean mInvalidated;
+
+    GlTileRenderer(SurfaceHolder surfaceHolder, GameMetrics metrics, int fadeTicks,
+                   int backgroundColor, int hiddenTileColor) {
+        mSurfaceHolder = surfaceHolder;
+        mMetrics = metrics;
+        mBackgroundColor = backgroundColor;
+        // the palette is only used for colors and glyphs, faces are never rendered to bitmaps
+        mMesh = new TileMesh(new TilePalette(backgroundColor), hiddenTileColor, backgroundColor, fadeTicks);
+
+        mDrawn = new Frame();
+        mInvalidated = true;
+    }
+
+    @Override
+    public boolean init() {
+        mDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (mDisplay == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(mDisplay, new int[2], 0, new int[2], 1)) {
+            Log.w(TAG, "No EGL display");
+            mDisplay = EGL14.EGL_NO_DISPLAY;
+            return false;
+        }
+
+        int[] configAttributes = {EGL14.EGL_RED_SIZE, 8,
+                                  EGL14.EGL_GREEN_SIZE, 8,
+                                  EGL14.EGL_BLUE_SIZE, 8,
+                                  EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                                  EGL14.EGL_NONE};
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configCount = new int[1];
+        if (!EGL14.eglChooseConfig(mDisplay, configAttributes, 0, configs, 0, 1, configCount, 0)
+            || configCount[0] == 0) {
+            Log.w(TAG, "No EGL config for OpenGL ES 2.0");
+            release();
+            return false;
+        }
+
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        mContext = EGL14.eglCreateContext(mDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        mSurface = EGL14.eglCreateWindowSurface(mDisplay, configs[0], mSurfaceHolder.getSurface(),
+                                                new int[]{EGL14.EGL_NONE}, 0);
+        if (mContext == EGL14.EGL_NO_CONTEXT || mSurface == EGL14.EGL_NO_SURFACE
+            || !EGL14.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext)) {
+            Log.w(TAG, "Cannot create EGL surface, error " + EGL14.eglGetError());
+            release();
+            return false;
+        }
+
+        mProgram = createProgram();
+        if (mProgram == 0) {
+            release();
+            return false;
+        }
+        mPositionAttribute = GLES20.glGetAttribLocation(mProgram, "aPosition");
+        mColorAttribute = GLES20.glGetAttribLocation(mProgram, "aColor");
+        mScaleUniform = GLES20.glGetUniformLocation(mProgram, "uScale");
+        GLES20.glUseProgram(mProgram);
+        GLES20.glEnableVertexAttribArray(mPositionAttribute);
+        GLES20.glEnableVertexAttribArray(mColorAttribute);
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLES20.glClearColor(TileMesh.red(mBackgroundColor), TileMesh.green(mBackgroundColor),
+                            TileMesh.blue(mBackgroundColor), 1);
+
+        mInvalidated = true;
+        return true;
+    }
+
+    @Override
+    public void invalidate() {
+        mInvalidated = true;
+    }
+
+    @Override
+    public boolean prepare(Frame frame) {
+        boolean relayout = mInvalidated || !frame.hasSameLayout(mDrawn);
+        boolean changed = relayout;
+        for (int i = 0; i < frame.size && !changed; i++) {
+            int cell = frame.cells[i];
+            changed = cell != mDrawn.cells[i] || Grid.animationStepsOf(cell) > 0;
+        }
+        if (!changed) {
+            return false;
+        }
+        if (relayout) {
+            GLES20.glViewport(0, 0, frame.canvasWidth, frame.canvasHeight);
+            GLES20.glUniform2f(mScaleUniform, 2f / frame.canvasWidth, -2f / frame.canvasHeight);
+        }
+        mInvalidated = false;
+        mDrawn.set(frame);
+        return true;
+    }
+
+    @Override
+    public long draw(Frame frame, float interpolation) {
+        long drawStart = System.nanoTime();
+        mMesh.build(frame, interpolation);
+        int vertexCount = mMesh.getVertexCount();
+        uploadVertices(vertexCount);
+
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        if (vertexCount > 0) {
+            mVertexBuffer.position(0);
+            GLES20.glVertexAttribPointer(mPositionAttribute, 2, GLES20.GL_FLOAT, false, STRIDE, mVertexBuffer);
+            mVertexBuffer.position(2);
+            GLES20.glVertexAttribPointer(mColorAttribute, 4, GLES20.GL_FLOAT, false, STRIDE, mVertexBuffer);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
+        }
+
+        long swapStart = System.nanoTime();
+        long drawTime = swapStart - drawStart;
+        mMetrics.getDrawTime().record(drawTime);
+        // blocks while the compositor holds all the buffers, like lockCanvas() does
+        boolean swapped = EGL14.eglSwapBuffers(mDisplay, mSurface);
+        mMetrics.getLockWaitTime().record(System.nanoTime() - swapStart);
+        if (!swapped) {
+            mInvalidated = true;
+            return -1;
+        }
+        return drawTime;
+    }
+
+    /**
+     * The EGL surface is tied to the window, so everything is released; the mesh and vertex buffer are kept.
+     */
+    @Override
+    public void detach() {
+        release();
+    }
+
+    @Override
+    public void release() {
+        if (mDisplay != EGL14.EGL_NO_DISPLAY) {
+            EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            if (mSurface != EGL14.EGL_NO_SURFACE) {
+                EGL14.eglDestroySurface(mDisplay, mSurface);
+            }
+            if (mContext != EGL14.EGL_NO_CONTEXT) {
+                // also frees the program
+                EGL14.eglDestroyContext(mDisplay, mContext);
+            }
+            EGL14.eglTerminate(mDisplay);
+        }
+        mDisplay = EGL14.EGL_NO_DISPLAY;
+        mSurface = EGL14.EGL_NO_SURFACE;
+        mContext = EGL14.EGL_NO_CONTEXT;
+        mProgram = 0;
+    }
+
+    private void uploadVertices(int vertexCount) {
+        float[] vertices = mMesh.getVertices();
+        if (mVertexBuffer == null || mVertexBuffer.capacity() < vertices.length) {
+            mVertexBuffer = ByteBuffer.allocateDirect(vertices.length * 4)
+                                      .order(ByteOrder.nativeOrder())
+                                      .asFloatBuffer();
+        }
+        mVertexBuffer.position(0);
+        mVertexBuffer.put(vertices, 0, vertexCount * TileMesh.FLOATS_PER_VERTEX);
+    }
+
+    private static int createProgram() {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            return 0;
+        }
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.w(TAG, "Cannot link program");
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    private static int loadShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.w(TAG, "Cannot compile shader: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+}
@@ -2,14 +2,38 @@ package catalinc.games.memory_game;
 
 import java.io.Serializable;
 
+/**
+ * Board of tiles packed into one int per cell, indexed by {@code row * cols + col}.
+ * <p/>
+ * Cell layout: bits 0-15 color, bits 16-17 state, bit 18 dirty, bits 24-31 animation steps. The static
+ * {@code ...Of(int cell)} methods decode cells copied out with {@link #drainCells(int[])}.
+ * <p/>
+ * Tiles share the canvas evenly. The game lays them out with a minimum size, {@link #MIN_TILE_SIZE_DP} scaled to the
+ * screen density, so a large board can be bigger than the canvas; a {@link Camera} then maps it onto the screen.
+ * The constructor and the setters without a minimum fit the board to the canvas.
+ */
 public class Grid implements Serializable {
 
-    private final int      rows;
-    private final int      cols;
-    private final Tile[][] data;
+    public static final int MAX_COLORS          = 1 << 16;
+    public static final int MAX_ANIMATION_STEPS = 0xff;
+    public static final int MAX_TILES           = 2 * MAX_COLORS;
+    // a comfortable touch target, in density independent pixels; as many pixels on a 160 dpi screen
+    public static final int MIN_TILE_SIZE_DP    = 48;
 
-    private int selectedRow;
-    private int selectedCol;
+    private static final int COLOR_MASK      = 0xffff;
+    private static final int STATE_SHIFT     = 16;
+    private static final int STATE_MASK      = 0x3 << STATE_SHIFT;
+    private static final int DIRTY_BIT       = 1 << 18;
+    private static final int ANIMATION_SHIFT = 24;
+    private static final int ANIMATION_MASK  = MAX_ANIMATION_STEPS << ANIMATION_SHIFT;
+
+    private final int   rows;
+    private final int   cols;
+    private final int[] cells;
+
+    private int selected;
+    // cells with animation steps left
+    private int animatingCells;
 
     private int tileHeight;
     private int tileWidth;
@@ -19,15 +43,27 @@ public class Grid implements Serializable {
     public Grid(int rows, int cols, int canvasHeight, int canvasWidth) {
         this.rows = rows;
         this.cols = cols;
-        this.data = new Tile[rows][cols];
+        this.cells = new int[rows * cols];
 
-        this.selectedRow = -1;
-        this.selectedCol = -1;
+        this.selected = -1;
 
         setCanvasHeight(canvasHeight);
         setCanvasWidth(canvasWidth);
     }
 
+    /**
+     * @return a deep copy of this grid
+     */
+    public Grid copy() {
+        Grid copy = new Grid(rows, cols, 0, 0);
+        System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+        copy.selected = selected;
+        copy.animatingCells = animatingCells;
+        copy.tileHeight = tileHeight;
+        copy.tileWidth = tileWidth;
+        return copy;
+    }
+
     public int getRows() {
         return rows;
     }
@@ -36,17 +72,35 @@ public class Grid implements Serializable {
         return cols;
     }
 
+    public int size() {
+        return cells.length;
+    }
+
     public void setCanvasHeight(int canvasHeight) {
+        setCanvasHeight(canvasHeight, 0);
+    }
+
+    /**
+     * @param minTileSize in pixels
+     */
+    public void setCanvasHeight(int canvasHeight, int minTileSize) {
         if (rows > 0) {
-            tileHeight = canvasHeight / rows;
+            tileHeight = Math.max(canvasHeight / rows, minTileSize);
         } else {
             tileHeight = 0;
         }
     }
 
     public void setCanvasWidth(int canvasWidth) {
+        setCanvasWidth(canvasWidth, 0);
+    }
+
+    /**
+     * @param minTileSize in pixels
+     */
+    public void setCanvasWidth(int canvasWidth, int minTileSize) {
         if (cols > 0) {
-            tileWidth = canvasWidth / cols;
+            tileWidth = Math.max(canvasWidth / cols, minTileSize);
         } else {
             tileWidth = 0;
         }
@@ -60,43 +114,216 @@ public class Grid implements Serializable {
         return tileWidth;
     }
 
-    public Tile getTileAt(int row, int col) {
+    /**
+     * @return width of the board, in board pixels
+     */
+    public int getWidth() {
+        return cols * tileWidth;
+    }
+
+    public int getHeight() {
+        return rows * tileHeight;
+    }
+
+    /**
+     * @return cell index, or -1 if the position is outside the grid
+     */
+    public int indexOf(int row, int col) {
         if ((row >= 0 && row < rows) && (col >= 0 && col < cols)) {
-            return data[row][col];
+            return row * cols + col;
         }
-        return null;
+        return -1;
     }
 
-    public void setTileAt(Tile tile, int row, int col) {
-        if ((row >= 0 && row < rows) && (col >= 0 && col < cols)) {
-            tile.setRow(row);
-            tile.setCol(col);
-            data[row][col] = tile;
+    /**
+     * @return index of the cell under the point, or -1
+     */
+    public int indexAtPoint(float x, float y) {
+        if (x < 0 || y < 0 || tileWidth == 0 || tileHeight == 0) {
+            return -1;
         }
+        return indexOf((int) y / tileHeight, (int) x / tileWidth);
     }
 
-    public Tile getTileAtPoint(float x, float y) {
-        int row = (int) y / tileHeight;
-        int col = (int) x / tileWidth;
-        return getTileAt(row, col);
+    /**
+     * @param x screen point, mapped onto the board through {@code camera}
+     * @return index of the cell under the point, or -1
+     */
+    public int indexAtPoint(float x, float y, Camera camera) {
+        return indexAtPoint(camera.toBoardX(x), camera.toBoardY(y));
     }
 
-    public void selectTile(Tile tile) {
-        tile.setState(Tile.STATE_SELECTED);
-        this.selectedRow = tile.getRow();
-        this.selectedCol = tile.getCol();
+    public int rowOf(int index) {
+        return index / cols;
     }
 
-    public void clearSelectedTile() {
-        Tile selected = getSelectedTile();
-        if (selected != null) {
-            selected.setState(Tile.STATE_HIDDEN);
+    public int colOf(int index) {
+        return index % cols;
+    }
+
+    public void setTile(int index, int color, int state) {
+        if (animationStepsOf(cells[index]) > 0) {
+            animatingCells--;
+        }
+        cells[index] = (color & COLOR_MASK) | (state << STATE_SHIFT) | DIRTY_BIT;
+    }
+
+    public int getColor(int index) {
+        return colorOf(cells[index]);
+    }
+
+    public int getState(int index) {
+        return stateOf(cells[index]);
+    }
+
+    public void setState(int index, int state) {
+        int cell = cells[index];
+        if (((cell & STATE_MASK) >>> STATE_SHIFT) != state) {
+            cells[index] = (cell & ~STATE_MASK) | (state << STATE_SHIFT) | DIRTY_BIT;
+        }
+    }
+
+    public int getAnimationSteps(int index) {
+        return animationStepsOf(cells[index]);
+    }
+
+    /**
+     * @param steps clamped to {@link #MAX_ANIMATION_STEPS}
+     */
+    public void setAnimationSteps(int index, int steps) {
+        steps = Math.min(Math.max(steps, 0), MAX_ANIMATION_STEPS);
+        int cell = cells[index];
+        int previous = cell >>> ANIMATION_SHIFT;
+        if (previous != steps) {
+            cells[index] = (cell & ~ANIMATION_MASK) | (steps << ANIMATION_SHIFT) | DIRTY_BIT;
+            if (previous == 0) {
+                animatingCells++;
+            } else if (steps == 0) {
+                animatingCells--;
+            }
+        }
+    }
+
+    /**
+     * @return true if some cell has animation steps left
+     */
+    public boolean isAnimating() {
+        return animatingCells > 0;
+    }
+
+    /**
+     * @return true if the cell changed since the last {@link #drainCells(int[])}
+     */
+    public boolean isDirty(int index) {
+        return (cells[index] & DIRTY_BIT) != 0;
+    }
+
+    public void setDirty(int index, boolean dirty) {
+        if (dirty) {
+            cells[index] |= DIRTY_BIT;
+        } else {
+            cells[index] &= ~DIRTY_BIT;
+        }
+    }
+
+    /**
+     * Copies the cells to {@code dest} without their dirty flags, then clears the flags.
+     *
+     * @return true if any cell was dirty
+     */
+    public boolean drainCells(int[] dest) {
+        boolean dirty = false;
+        for (int i = 0; i < cells.length; i++) {
+            int cell = cells[i];
+            if ((cell & DIRTY_BIT) != 0) {
+                dirty = true;
+                cell &= ~DIRTY_BIT;
+                cells[i] = cell;
+            }
+            dest[i] = cell;
+        }
+        return dirty;
+    }
+
+    /**
+     * Like {@link #drainCells(int[])}, but only for the cells of a window of the board; {@code dest} holds the
+     * window row after row. The flags of the cells outside the window are left as they are.
+     *
+     * @return true if any cell of the window was dirty
+     */
+    public boolean drainCells(int[] dest, int firstRow, int firstCol, int windowRows, int windowCols) {
+        boolean dirty = false;
+        int d = 0;
+        for (int row = firstRow; row < firstRow + windowRows; row++) {
+            int start = row * cols + firstCol;
+            for (int i = start; i < start + windowCols; i++) {
+                int cell = cells[i];
+                if ((cell & DIRTY_BIT) != 0) {
+                    dirty = true;
+                    cell &= ~DIRTY_BIT;
+                    cells[i] = cell;
+                }
+                dest[d++] = cell;
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Copies the cells to {@code dest} from {@code offset} on, without their dirty flags. Unlike
+     * {@link #drainCells(int[])} the flags are left as they are.
+     */
+    public void copyCells(int[] dest, int offset) {
+        for (int i = 0; i < cells.length; i++) {
+            dest[offset + i] = cells[i] & ~DIRTY_BIT;
         }
-        this.selectedRow = -1;
-        this.selectedCol = -1;
     }
 
-    public Tile getSelectedTile() {
-        return getTileAt(selectedRow, selectedCol);
+    /**
+     * Replaces all the cells with the ones copied by {@link #copyCells(int[], int)}, and the selection. Every cell
+     * becomes dirty.
+     */
+    public void setCells(int[] src, int offset, int selected) {
+        int animating = 0;
+        for (int i = 0; i < cells.length; i++) {
+            int cell = src[offset + i];
+            cells[i] = cell | DIRTY_BIT;
+            if (animationStepsOf(cell) > 0) {
+                animating++;
+            }
+        }
+        this.selected = selected;
+        this.animatingCells = animating;
+    }
+
+    public static int colorOf(int cell) {
+        return cell & COLOR_MASK;
+    }
+
+    public static int stateOf(int cell) {
+        return (cell & STATE_MASK) >>> STATE_SHIFT;
+    }
+
+    public static int animationStepsOf(int cell) {
+        return cell >>> ANIMATION_SHIFT;
+    }
+
+    /**
+     * @return index of the selected cell, or -1
+     */
+    public int getSelectedIndex() {
+        return selected;
+    }
+
+    public void selectIndex(int index) {
+        setState(index, Tile.STATE_SELECTED);
+        selected = index;
+    }
+
+    public void clearSelectedTile() {
+        if (selected >= 0) {
+            setState(selected, Tile.STATE_HIDDEN);
+        }
+        this.selected = -1;
     }
 }
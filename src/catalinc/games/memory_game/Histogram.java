@@ -0,0 +1,138 @@
+package catalinc.games.memory_game;
+
+/**
+ * Fixed-size log-linear histogram of non-negative values, in the spirit of HdrHistogram.
+ * <p/>
+ * Every power of two is split into {@code 2^SUB_BITS} linear buckets, so recorded values keep about 3% precision.
+ * Recording never allocates. The histogram is written by one thread; reads from other threads are approximate.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS  = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_BITS  = 40;
+
+    private final long[] counts;
+    private       long   totalCount;
+    private       long   sum;
+    private       double sumOfSquares;
+    private       long   min;
+    private       long   max;
+
+    public Histogram() {
+        counts = new long[(MAX_BITS - SUB_BITS + 1) * SUB_COUNT];
+        reset();
+    }
+
+    /**
+     * @param value negative values are recorded as 0, values above 2^40 as 2^40
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        sumOfSquares += (double) value * value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds all the values recorded by {@code other}.
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+        sum = 0;
+        sumOfSquares = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * @return standard deviation of the exact recorded values, 0 if fewer than two were recorded
+     */
+    public double getStdDeviation() {
+        if (totalCount < 2) {
+            return 0;
+        }
+        double mean = (double) sum / totalCount;
+        double variance = (sumOfSquares - mean * sum) / (totalCount - 1);
+        return Math.sqrt(Math.max(variance, 0));
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return lower bound of the bucket holding the value at the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount;
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(bucketLowerBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        if (msb >= MAX_BITS) {
+            return (MAX_BITS - SUB_BITS + 1) * SUB_COUNT - 1;
+        }
+        int shift = msb - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    private static long bucketLowerBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        return (long) (index % SUB_COUNT + SUB_COUNT) << shift;
+    }
+}
@@ -0,0 +1,277 @@
+package catalinc.games.memory_game;
+
+import android.content.Context;
+import android.os.Handler;
+import android.view.View;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+/**
+ * Status, score, timer, moves and the replay bar shown over the board.
+ * <p/>
+ * The game thread changes a pending state; the first change of a burst posts one runnable to the UI thread, which
+ * applies the latest state to the views that differ. The timer is refreshed on the UI thread once a second from a
+ * copy of the game stop watch. Nothing allocates after construction, except the texts passed in.
+ */
+public class Hud {
+
+    private final Handler  mHandler;
+    private final Runnable mApplier;
+    private final Runnable mTicker;
+
+    private final Object   mLock;
+    // written by the game thread, guarded by mLock
+    private final HudState mPending;
+    private       boolean  mPosted;
+
+    // UI thread only
+    private final HudState mLatest;
+    private final HudState mShown;
+    private final char[]   mTimerText;
+    private final char[]   mMovesLabel;
+    private       long     mTimerSeconds;
+    private       int      mTimerMoves;
+    private       boolean  mTicking;
+    private       boolean  mReplayTracking;
+
+    private TextView mStatusView;
+    private TextView mScoreView;
+    private TextView mTimerView;
+    private SeekBar  mReplayView;
+
+    /**
+     * Must be created on the UI thread.
+     */
+    public Hud(Context context) {
+        mHandler = new Handler();
+        mApplier = new Runnable() {
+            @Override
+            public void run() {
+                apply();
+            }
+        };
+        mTicker = new Runnable() {
+            @Override
+            public void run() {
+                updateTimer();
+            }
+        };
+
+        mLock = new Object();
+        mPending = new HudState();
+        mLatest = new HudState();
+        mShown = new HudState();
+        // nothing shown yet, every view is updated by the first apply()
+        mShown.statusVisible = true;
+        mShown.scoreVisible = true;
+
+        String movesLabel = " " + context.getResources().getString(R.string.moves);
+        mMovesLabel = movesLabel.toCharArray();
+        // m:ss, two spaces, up to 10 digits, the label
+        mTimerText = new char[9 + 2 + 10 + mMovesLabel.length];
+        mTimerSeconds = -1;
+        mTimerMoves = -1;
+    }
+
+    public void setStatusView(TextView statusView) {
+        mStatusView = statusView;
+    }
+
+    public void setScoreView(TextView scoreView) {
+        mScoreView = scoreView;
+    }
+
+    public void setTimerView(TextView timerView) {
+        mTimerView = timerView;
+    }
+
+    public void setReplayView(SeekBar replayView) {
+        mReplayView = replayView;
+    }
+
+    // game thread
+
+    /**
+     * @param text null hides the status
+     */
+    void setStatus(String text) {
+        synchronized (mLock) {
+            mPending.statusText = text;
+            mPending.statusVisible = text != null;
+            schedule();
+        }
+    }
+
+    /**
+     * @param text null hides the score
+     */
+    void setScore(String text) {
+        synchronized (mLock) {
+            mPending.scoreText = text;
+            mPending.scoreVisible = text != null;
+            schedule();
+        }
+    }
+
+    void setMoves(int moves) {
+        synchronized (mLock) {
+            mPending.moves = moves;
+            schedule();
+        }
+    }
+
+    /**
+     * @param moveCount moves of the replay, 0 hides the replay bar
+     */
+    void setReplay(int position, int moveCount) {
+        synchronized (mLock) {
+            mPending.replayPosition = position;
+            mPending.replayMoveCount = moveCount;
+            schedule();
+        }
+    }
+
+    /**
+     * Copies the stop watch, the timer runs on its own while the copy runs.
+     */
+    void setStopWatch(StopWatch stopWatch) {
+        synchronized (mLock) {
+            mPending.stopWatch.set(stopWatch);
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!mPosted) {
+            mPosted = true;
+            mHandler.post(mApplier);
+        }
+    }
+
+    // UI thread
+
+    /**
+     * Starts refreshing the timer.
+     */
+    void start() {
+        mTicking = true;
+        mTimerSeconds = -1;
+        mHandler.removeCallbacks(mTicker);
+        mHandler.post(mTicker);
+    }
+
+    void stop() {
+        mTicking = false;
+        mHandler.removeCallbacks(mTicker);
+    }
+
+    /**
+     * While the replay bar is dragged, the replay position is not shown on it so the thumb stays under the finger.
+     */
+    void setReplayTracking(boolean tracking) {
+        mReplayTracking = tracking;
+    }
+
+    private void apply() {
+        HudState latest = mLatest;
+        synchronized (mLock) {
+            latest.set(mPending);
+            mPosted = false;
+        }
+        HudState shown = mShown;
+
+        if (mStatusView != null) {
+            if (latest.statusVisible != shown.statusVisible) {
+                mStatusView.setVisibility(latest.statusVisible ? View.VISIBLE : View.INVISIBLE);
+            }
+            if (latest.statusText != null && !latest.statusText.equals(shown.statusText)) {
+                mStatusView.setText(latest.statusText);
+            }
+        }
+        if (mScoreView != null) {
+            if (latest.scoreVisible != shown.scoreVisible) {
+                mScoreView.setVisibility(latest.scoreVisible ? View.VISIBLE : View.INVISIBLE);
+            }
+            if (latest.scoreText != null && !latest.scoreText.equals(shown.scoreText)) {
+                mScoreView.setText(latest.scoreText);
+            }
+        }
+        if (mReplayView != null) {
+            boolean visible = latest.replayMoveCount > 0;
+            if (visible != shown.replayMoveCount > 0) {
+                mReplayView.setVisibility(visible ? View.VISIBLE : View.GONE);
+            }
+            if (latest.replayMoveCount != shown.replayMoveCount) {
+                mReplayView.setMax(latest.replayMoveCount);
+            }
+            if (!mReplayTracking && latest.replayPosition != mReplayView.getProgress()) {
+                mReplayView.setProgress(latest.replayPosition);
+            }
+        }
+        shown.set(latest);
+        updateTimer();
+    }
+
+    /**
+     * Shows the time and moves; rescheduled for the next whole second while the timer runs.
+     */
+    private void updateTimer() {
+        StopWatch stopWatch = mShown.stopWatch;
+        long elapsed = stopWatch.elapsed();
+        long seconds = elapsed / 1000;
+        int moves = mShown.moves;
+        if (mTimerView != null && (seconds != mTimerSeconds || moves != mTimerMoves)) {
+            mTimerSeconds = seconds;
+            mTimerMoves = moves;
+            mTimerView.setText(mTimerText, 0, formatTimer(elapsed, moves));
+        }
+
+        mHandler.removeCallbacks(mTicker);
+        if (mTicking && stopWatch.isRunning()) {
+            mHandler.postDelayed(mTicker, 1000 - elapsed % 1000);
+        }
+    }
+
+    private int formatTimer(long elapsed, int moves) {
+        char[] text = mTimerText;
+        int n = StopWatch.format(elapsed, text);
+        text[n++] = ' ';
+        text[n++] = ' ';
+        int digits = 1;
+        for (int m = moves; m >= 10; m /= 10) {
+            digits++;
+        }
+        for (int i = n + digits - 1, m = moves; i >= n; i--, m /= 10) {
+            text[i] = (char) ('0' + m % 10);
+        }
+        n += digits;
+        System.arraycopy(mMovesLabel, 0, text, n, mMovesLabel.length);
+        return n + mMovesLabel.length;
+    }
+
+    /**
+     * Everything the HUD shows, copied between threads field by field.
+     */
+    private static class HudState {
+
+        String    statusText;
+        boolean   statusVisible;
+        String    scoreText;
+        boolean   scoreVisible;
+        int       moves;
+        int       replayPosition;
+        int       replayMoveCount;
+        StopWatch stopWatch = new StopWatch();
+
+        void set(HudState other) {
+            statusText = other.statusText;
+            statusVisible = other.statusVisible;
+            scoreText = other.scoreText;
+            scoreVisible = other.scoreVisible;
+            moves = other.moves;
+            replayPosition = other.replayPosition;
+            replayMoveCount = other.replayMoveCount;
+            stopWatch.set(other.stopWatch);
+        }
+    }
+}
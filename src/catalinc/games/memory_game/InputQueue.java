@@ -0,0 +1,121 @@
+package catalinc.games.memory_game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue of input records (kind, x, y, event time).
+ * <p/>
+ * Safe for exactly one producer thread and one consumer thread. Records are kept in preallocated
+ * primitive arrays, so neither side allocates.
+ */
+public class InputQueue {
+
+    private final int     mask;
+    private final int[]   kinds;
+    private final float[] xs;
+    private final float[] ys;
+    private final long[]  times;
+
+    // next slot to read, only written by the consumer
+    private final AtomicLong head;
+    // next slot to write, only written by the producer
+    private final AtomicLong tail;
+
+    private volatile int dropped;
+
+    /**
+     * @param capacity power of two
+     */
+    public InputQueue(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.kinds = new int[capacity];
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.times = new long[capacity];
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return false if the queue is full and the record was dropped
+     */
+    public boolean offer(int kind, float x, float y, long time) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return false;
+        }
+        int i = (int) t & mask;
+        kinds[i] = kind;
+        xs[i] = x;
+        ys[i] = y;
+        times[i] = time;
+        // publishes the record to the consumer
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side.
+     */
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Consumer side, only valid if the queue is not empty.
+     */
+    public int peekKind() {
+        return kinds[(int) head.get() & mask];
+    }
+
+    /**
+     * Consumer side, only valid if the queue is not empty.
+     */
+    public float peekX() {
+        return xs[(int) head.get() & mask];
+    }
+
+    /**
+     * Consumer side, only valid if the queue is not empty.
+     */
+    public float peekY() {
+        return ys[(int) head.get() & mask];
+    }
+
+    /**
+     * Consumer side, only valid if the queue is not empty.
+     */
+    public long peekTime() {
+        return times[(int) head.get() & mask];
+    }
+
+    /**
+     * Consumer side, discards the oldest record.
+     */
+    public void remove() {
+        long h = head.get();
+        if (h != tail.get()) {
+            head.lazySet(h + 1);
+        }
+    }
+
+    /**
+     * Consumer side, discards all the records.
+     */
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+
+    /**
+     * @return number of records dropped because the queue was full
+     */
+    public int getDropped() {
+        return dropped;
+    }
+}
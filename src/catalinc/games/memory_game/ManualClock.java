@@ -0,0 +1,29 @@
+package catalinc.games.memory_game;
+
+/**
+ * Clock that only moves when told to, for headless and reproducible runs.
+ */
+public class ManualClock implements Clock {
+
+    private long now;
+
+    public ManualClock() {
+    }
+
+    public ManualClock(long nanoTime) {
+        this.now = nanoTime;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    public void set(long nanoTime) {
+        this.now = nanoTime;
+    }
+
+    public void advance(long nanos) {
+        now += nanos;
+    }
+}
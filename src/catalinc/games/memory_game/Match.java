@@ -0,0 +1,90 @@
+package catalinc.games.memory_game;
+
+/**
+ * Two players taking turns on one board, on top of {@link GameRules}.
+ * <p/>
+ * A pair scores a point and the player keeps the turn; a mismatch passes the turn, and the mismatched tile stays
+ * turned for the opponent, as in the single player game. The game is over once every pair is solved.
+ * Free of Android and threading, not thread safe.
+ */
+public class Match {
+
+    public static final int SEATS = 2;
+
+    private final Grid  grid;
+    private final int   fadeSteps;
+    private final int[] scores;
+
+    private int turn;
+    private int solved;
+    private int moves;
+
+    /**
+     * @param grid      dealt board, played as is
+     * @param fadeSteps animation steps given to solved tiles, 0 when nothing is drawn
+     */
+    public Match(Grid grid, int fadeSteps) {
+        this.grid = grid;
+        this.fadeSteps = fadeSteps;
+        this.scores = new int[SEATS];
+    }
+
+    /**
+     * Plays the tile at {@code index} for the player in {@code seat}.
+     *
+     * @return one of the {@code GameRules.MOVE_} constants, {@code MOVE_IGNORED} also if it's not the player's turn
+     */
+    public int play(int seat, int index) {
+        if (seat != turn || isOver()) {
+            return GameRules.MOVE_IGNORED;
+        }
+        int move = GameRules.select(grid, index, fadeSteps);
+        switch (move) {
+            case GameRules.MOVE_PAIR:
+                scores[seat]++;
+                solved += 2;
+                break;
+            case GameRules.MOVE_MISMATCH:
+                turn = (turn + 1) % SEATS;
+                break;
+            default:
+        }
+        if (move != GameRules.MOVE_IGNORED) {
+            moves++;
+        }
+        return move;
+    }
+
+    public boolean isOver() {
+        return GameRules.allSolved(grid, solved);
+    }
+
+    /**
+     * @return seat of the player to move
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    public int getScore(int seat) {
+        return scores[seat];
+    }
+
+    /**
+     * @return seat of the player with more pairs, -1 for a draw
+     */
+    public int getWinner() {
+        if (scores[0] == scores[1]) {
+            return -1;
+        }
+        return scores[0] > scores[1] ? 0 : 1;
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public Grid getGrid() {
+        return grid;
+    }
+}
@@ -0,0 +1,223 @@
+package catalinc.games.memory_game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Connection to a {@link MatchServer} for one player. Connects, reads and writes on its own thread, and hands the
+ * server messages to a {@link Listener} on that thread.
+ * <p/>
+ * Moves can be sent from any thread and never block: they are queued in the output buffer and the client thread
+ * writes them once the socket takes them. A server that stops reading until the buffer fills up is given up on.
+ */
+public class MatchClient extends Thread {
+
+    public interface Listener {
+
+        /**
+         * An opponent was found, the match is on.
+         *
+         * @param seat 0 moves first
+         */
+        void onStart(int rows, int cols, int seat);
+
+        /**
+         * A tile was played by either player.
+         */
+        void onReveal(int tile, int color);
+
+        /**
+         * @param forfeit seat of the player who left, or -1
+         */
+        void onEnd(int score0, int score1, int forfeit);
+
+        /**
+         * The server could not be reached or the connection was lost. Called once, last.
+         */
+        void onDisconnected();
+    }
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final String   host;
+    private final int      port;
+    private final int      rows;
+    private final int      cols;
+    private final Listener listener;
+
+    private final ByteBuffer input;
+    // in write mode, holds what was not written yet; guarded by itself
+    private final ByteBuffer output;
+
+    private volatile SocketChannel channel;
+    private volatile Selector      selector;
+    private volatile boolean       closed;
+
+    /**
+     * @param rows size of the board to ask a match for
+     */
+    public MatchClient(String host, int port, int rows, int cols, Listener listener) {
+        super("MatchClient");
+        setDaemon(true);
+        this.host = host;
+        this.port = port;
+        this.rows = rows;
+        this.cols = cols;
+        this.listener = listener;
+        this.input = ByteBuffer.allocate(MatchProtocol.MAX_SIZE * 64);
+        this.output = ByteBuffer.allocate(MatchProtocol.MAX_SIZE * 64);
+    }
+
+    @Override
+    public void run() {
+        Selector socketSelector = null;
+        try {
+            SocketChannel socketChannel = SocketChannel.open();
+            channel = socketChannel;
+            if (closed) {
+                return;
+            }
+            socketChannel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            socketChannel.socket().setTcpNoDelay(true);
+            socketChannel.configureBlocking(false);
+            socketSelector = Selector.open();
+            selector = socketSelector;
+            SelectionKey key = socketChannel.register(socketSelector, SelectionKey.OP_READ);
+            sendJoin(rows, cols);
+            while (!closed) {
+                flush(key);
+                socketSelector.select();
+                socketSelector.selectedKeys().clear();
+                if (socketChannel.read(input) < 0) {
+                    throw new IOException("closed by the server");
+                }
+                readMessages();
+            }
+        } catch (IOException e) {
+            // lost, reported below
+        } finally {
+            close();
+            if (socketSelector != null) {
+                try {
+                    socketSelector.close();
+                } catch (IOException e) {
+                    // don't care
+                }
+            }
+            listener.onDisconnected();
+        }
+    }
+
+    /**
+     * Asks for another match, once the last one ended.
+     */
+    public void sendJoin(int rows, int cols) {
+        synchronized (output) {
+            if (!hasRoom()) {
+                return;
+            }
+            MatchProtocol.putJoin(output, rows, cols);
+        }
+        wakeUp();
+    }
+
+    /**
+     * Plays a tile; ignored by the server unless it is this player's turn.
+     */
+    public void sendMove(int tile) {
+        synchronized (output) {
+            if (!hasRoom()) {
+                return;
+            }
+            MatchProtocol.putMove(output, tile);
+        }
+        wakeUp();
+    }
+
+    /**
+     * Leaves the match, the opponent wins by forfeit.
+     */
+    public void close() {
+        closed = true;
+        SocketChannel socketChannel = channel;
+        if (socketChannel != null) {
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                // don't care
+            }
+        }
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        Selector socketSelector = selector;
+        if (socketSelector != null) {
+            socketSelector.wakeup();
+        }
+    }
+
+    // called with the output locked
+    private boolean hasRoom() {
+        if (output.remaining() < MatchProtocol.MAX_SIZE) {
+            // the server stopped reading
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes as much queued output as the socket takes, and waits for it to be writable if some is left.
+     */
+    private void flush(SelectionKey key) throws IOException {
+        synchronized (output) {
+            output.flip();
+            channel.write(output);
+            output.compact();
+            key.interestOps(output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                                                  : SelectionKey.OP_READ);
+        }
+    }
+
+    private void readMessages() throws IOException {
+        input.flip();
+        while (input.hasRemaining()) {
+            int size = MatchProtocol.sizeOf(input.get(input.position()));
+            if (size < 0) {
+                throw new IOException("unknown message " + input.get(input.position()));
+            }
+            if (input.remaining() < size) {
+                break;
+            }
+            readMessage();
+        }
+        input.compact();
+    }
+
+    private void readMessage() throws IOException {
+        byte type = input.get();
+        switch (type) {
+            case MatchProtocol.START:
+                int rows = input.getShort() & 0xffff;
+                int cols = input.getShort() & 0xffff;
+                listener.onStart(rows, cols, input.get());
+                break;
+            case MatchProtocol.REVEAL:
+                int tile = input.getInt();
+                listener.onReveal(tile, input.getInt());
+                break;
+            case MatchProtocol.END:
+                int score0 = input.getInt();
+                int score1 = input.getInt();
+                listener.onEnd(score0, score1, input.get());
+                break;
+            default:
+                throw new IOException("unexpected message " + type);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package catalinc.games.memory_game;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Drives a {@link MatchServer} with many bot clients over loopback and reports the move latency.
+ * <p/>
+ * Every client is a {@link MemoryPlayer} on one non-blocking socket; all of them share one selector thread. The
+ * clients join again as soon as a match ends, until they played {@code matches} matches each on average; who meets
+ * whom is up to the server. Each client keeps a replica of its match, built from the revealed tiles only, to know
+ * whose turn it is. The latency of a move is the time from sending it to reading its reveal.
+ * <p/>
+ * Usage: {@code MatchLoadTest clients matches [rows cols [host port]]}, against a server started in this process
+ * if no host is given
+ */
+public class MatchLoadTest {
+
+    private static final int MEMORY = 8;
+
+    // the board the app plays by default
+    private static final int DEFAULT_ROWS = 5;
+    private static final int DEFAULT_COLS = 4;
+
+    private final int rows;
+    private final int cols;
+    private final int matches;
+
+    private final Histogram latencies;
+    // match ends seen by the clients, two per match
+    private       long      ends;
+    private       long      forfeits;
+
+    public MatchLoadTest(int rows, int cols, int matches) {
+        this.rows = rows;
+        this.cols = cols;
+        this.matches = matches;
+        this.latencies = new Histogram();
+    }
+
+    /**
+     * Connects the clients and returns once they played their matches, or too many lost their connection.
+     *
+     * @param clients even, every match needs two
+     */
+    public void run(InetSocketAddress server, int clients, long seed) throws IOException {
+        if (clients < 2 || clients % 2 != 0) {
+            throw new IllegalArgumentException("clients must be even: " + clients);
+        }
+        long target = (long) clients * matches;
+        Selector selector = Selector.open();
+        Player.Factory players = MemoryPlayer.factory(MEMORY);
+        int open = 0;
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.connect(server);
+            Bot bot = new Bot(channel, players.create(new Random(BatchRunner.mix(seed + i))));
+            channel.register(selector, SelectionKey.OP_CONNECT, bot);
+            open++;
+        }
+
+        while (open > 1 && ends < target) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Bot bot = (Bot) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        bot.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        bot.join();
+                    } else if (key.isReadable() && !bot.read()) {
+                        key.channel().close();
+                        open--;
+                    }
+                } catch (IOException e) {
+                    bot.channel.close();
+                    open--;
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    public void writeTo(PrintWriter out) {
+        out.println("matches:    " + ends / 2);
+        out.println("forfeits:   " + forfeits);
+        out.println("moves:      " + latencies.getCount());
+        out.printf("latency:    mean %.0f us, p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                   latencies.getMean() / 1000,
+                   latencies.getValueAtPercentile(50) / 1000,
+                   latencies.getValueAtPercentile(99) / 1000,
+                   latencies.getValueAtPercentile(99.9) / 1000,
+                   latencies.getMax() / 1000);
+        out.flush();
+    }
+
+    private class Bot {
+
+        final SocketChannel channel;
+        final Player        player;
+        final ByteBuffer    input;
+        final ByteBuffer    output;
+
+        Match match;
+        int   seat;
+        // send time of the move waiting for its reveal, 0 if none
+        long  moveSent;
+
+        Bot(SocketChannel channel, Player player) {
+            this.channel = channel;
+            this.player = player;
+            this.input = ByteBuffer.allocate(MatchProtocol.MAX_SIZE * 64);
+            this.output = ByteBuffer.allocate(MatchProtocol.MAX_SIZE);
+        }
+
+        void join() throws IOException {
+            output.clear();
+            MatchProtocol.putJoin(output, rows, cols);
+            write();
+        }
+
+        /**
+         * @return false if the server closed the connection
+         */
+        boolean read() throws IOException {
+            if (channel.read(input) < 0) {
+                return false;
+            }
+            input.flip();
+            while (input.hasRemaining()) {
+                int size = MatchProtocol.sizeOf(input.get(input.position()));
+                if (size < 0) {
+                    throw new IOException("unknown message");
+                }
+                if (input.remaining() < size) {
+                    break;
+                }
+                switch (input.get()) {
+                    case MatchProtocol.START:
+                        int boardRows = input.getShort() & 0xffff;
+                        int boardCols = input.getShort() & 0xffff;
+                        seat = input.get();
+                        match = new Match(new Grid(boardRows, boardCols, 0, 0), 0);
+                        player.newGame(match.getGrid());
+                        break;
+                    case MatchProtocol.REVEAL:
+                        int tile = input.getInt();
+                        int color = input.getInt();
+                        if (moveSent != 0 && match.getTurn() == seat) {
+                            latencies.record(System.nanoTime() - moveSent);
+                            moveSent = 0;
+                        }
+                        Grid grid = match.getGrid();
+                        grid.setTile(tile, color, Tile.STATE_HIDDEN);
+                        match.play(match.getTurn(), tile);
+                        player.onReveal(tile, color);
+                        break;
+                    case MatchProtocol.END:
+                        input.getInt();
+                        input.getInt();
+                        if (input.get() >= 0) {
+                            forfeits++;
+                        }
+                        ends++;
+                        match = null;
+                        join();
+                        break;
+                    default:
+                        throw new IOException("unexpected message");
+                }
+            }
+            input.compact();
+
+            if (match != null && !match.isOver() && match.getTurn() == seat && moveSent == 0) {
+                output.clear();
+                MatchProtocol.putMove(output, player.nextMove(match.getGrid()));
+                moveSent = System.nanoTime();
+                write();
+            }
+            return true;
+        }
+
+        private void write() throws IOException {
+            output.flip();
+            // a few bytes at a time, the socket buffer always takes them
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: MatchLoadTest clients matches [rows cols [host port]]");
+            System.exit(2);
+        }
+        int clients = Integer.parseInt(args[0]);
+        int matches = Integer.parseInt(args[1]);
+        int rows = args.length > 3 ? Integer.parseInt(args[2]) : DEFAULT_ROWS;
+        int cols = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_COLS;
+
+        MatchServer server = null;
+        InetSocketAddress address;
+        if (args.length > 5) {
+            address = new InetSocketAddress(args[4], Integer.parseInt(args[5]));
+        } else {
+            server = new MatchServer(new InetSocketAddress("127.0.0.1", 0),
+                                     Runtime.getRuntime().availableProcessors());
+            server.start();
+            address = new InetSocketAddress("127.0.0.1", server.getPort());
+        }
+
+        MatchLoadTest test = new MatchLoadTest(rows, cols, matches);
+        long start = System.nanoTime();
+        test.run(address, clients, 0);
+        long millis = (System.nanoTime() - start) / 1000000;
+        if (server != null) {
+            server.close();
+        }
+
+        PrintWriter out = new PrintWriter(System.out);
+        test.writeTo(out);
+        out.println("run time:   " + millis + " ms, " + clients + " clients");
+        out.flush();
+    }
+}
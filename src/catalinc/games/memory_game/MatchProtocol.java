@@ -0,0 +1,73 @@
+package catalinc.games.memory_game;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary protocol between {@link MatchServer} and its clients. Every message is a type byte followed by a payload
+ * of fixed size, big endian; there is no other framing.
+ * <p/>
+ * Client to server: {@code JOIN rows:short cols:short} asks for a match on a board of that size, {@code MOVE
+ * tile:int} plays a tile. Server to client: {@code START rows:short cols:short seat:byte} once an opponent was
+ * found, {@code REVEAL tile:int color:int} after every accepted move of either player, and {@code END score0:int
+ * score1:int forfeit:byte} when the match is over; {@code forfeit} is the seat of a player who left, or -1.
+ * <p/>
+ * Only the tiles turned so far are revealed, so a client cannot see the board ahead. Seat 0 moves first.
+ */
+public final class MatchProtocol {
+
+    public static final byte JOIN   = 1;
+    public static final byte MOVE   = 2;
+    public static final byte START  = 10;
+    public static final byte REVEAL = 11;
+    public static final byte END    = 12;
+
+    public static final int DEFAULT_PORT = 7341;
+
+    /**
+     * Size of the longest message.
+     */
+    public static final int MAX_SIZE = 10;
+
+    private MatchProtocol() {
+    }
+
+    /**
+     * @return size of the message including the type byte, -1 if the type is unknown
+     */
+    public static int sizeOf(byte type) {
+        switch (type) {
+            case JOIN:
+                return 5;
+            case MOVE:
+                return 5;
+            case START:
+                return 6;
+            case REVEAL:
+                return 9;
+            case END:
+                return 10;
+            default:
+                return -1;
+        }
+    }
+
+    public static void putJoin(ByteBuffer out, int rows, int cols) {
+        out.put(JOIN).putShort((short) rows).putShort((short) cols);
+    }
+
+    public static void putMove(ByteBuffer out, int tile) {
+        out.put(MOVE).putInt(tile);
+    }
+
+    public static void putStart(ByteBuffer out, int rows, int cols, int seat) {
+        out.put(START).putShort((short) rows).putShort((short) cols).put((byte) seat);
+    }
+
+    public static void putReveal(ByteBuffer out, int tile, int color) {
+        out.put(REVEAL).putInt(tile).putInt(color);
+    }
+
+    public static void putEnd(ByteBuffer out, int score0, int score1, int forfeit) {
+        out.put(END).putInt(score0).putInt(score1).put((byte) forfeit);
+    }
+}
@@ -0,0 +1,521 @@
+package catalinc.games.memory_game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts head-to-head matches for any number of clients on a few threads, speaking {@link MatchProtocol} over
+ * non-blocking sockets.
+ * <p/>
+ * Every worker thread owns a selector and the connections assigned to it; the first one also accepts. Clients that
+ * join with the same board size are paired in arrival order and their match is dealt from a fresh seed. The two
+ * players of a match may live on different workers, so a match is locked while a move is played, and writes to a
+ * connection of another worker go through its output buffer and wake that worker up. A client that lets its
+ * output buffer fill up is too slow to play and gets disconnected.
+ * <p/>
+ * Usage: {@code MatchServer [port [threads]]}
+ */
+public class MatchServer {
+
+    private static final int OUTPUT_CAPACITY = 4 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final Worker[]            workers;
+    private final Random              seeds;
+
+    // clients waiting for an opponent, by board size; guarded by itself
+    private final Map<Integer, Connection> lobby;
+
+    private final AtomicInteger connections;
+    private final AtomicLong    matchesStarted;
+    private final AtomicLong    matchesFinished;
+    private final AtomicLong    moves;
+
+    private int     nextWorker;
+    private boolean closed;
+
+    /**
+     * @param address port 0 for any free port, see {@link #getPort()}
+     */
+    public MatchServer(InetSocketAddress address, int threads) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        ServerSocket socket = serverChannel.socket();
+        socket.setReuseAddress(true);
+        socket.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+
+        seeds = new Random();
+        lobby = new HashMap<Integer, Connection>();
+        connections = new AtomicInteger();
+        matchesStarted = new AtomicLong();
+        matchesFinished = new AtomicLong();
+        moves = new AtomicLong();
+
+        workers = new Worker[Math.max(threads, 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+        serverChannel.register(workers[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void start() {
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public long getMatchesStarted() {
+        return matchesStarted.get();
+    }
+
+    public long getMatchesFinished() {
+        return matchesFinished.get();
+    }
+
+    public long getMoves() {
+        return moves.get();
+    }
+
+    /**
+     * Stops accepting, closes every connection and waits for the workers to exit.
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+        }
+        for (Worker worker : workers) {
+            worker.selector.wakeup();
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // don't care
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Worker worker = workers[nextWorker];
+                nextWorker = (nextWorker + 1) % workers.length;
+                connections.incrementAndGet();
+                worker.register(new Connection(channel, worker));
+            }
+        } catch (IOException e) {
+            // out of file descriptors or similar, the client sees a reset; keep serving the others
+        }
+    }
+
+    private void onJoin(Connection connection, int rows, int cols) {
+        // rows and cols come from the wire
+        if (!GameRules.isValidBoard(rows, cols) || connection.session != null) {
+            connection.close();
+            return;
+        }
+        Integer key = (rows << 16) | cols;
+        Connection opponent;
+        synchronized (lobby) {
+            opponent = lobby.remove(key);
+            if (opponent == null || !opponent.isOpen()) {
+                lobby.put(key, connection);
+                connection.waitingFor = key;
+                return;
+            }
+            opponent.waitingFor = null;
+        }
+
+        long seed;
+        synchronized (seeds) {
+            seed = seeds.nextLong();
+        }
+        Grid grid = new Grid(rows, cols, 0, 0);
+        GameRules.setupGrid(grid, new Random(seed));
+        Session session = new Session(new Match(grid, 0), opponent, connection);
+        matchesStarted.incrementAndGet();
+        synchronized (session) {
+            for (int seat = 0; seat < Match.SEATS; seat++) {
+                Connection player = session.players[seat];
+                player.seat = seat;
+                player.session = session;
+                synchronized (player) {
+                    MatchProtocol.putStart(player.output(), rows, cols, seat);
+                    player.flush();
+                }
+            }
+            // the opponent may have left while being paired, its close did not see the session yet
+            if (!opponent.isOpen()) {
+                synchronized (connection) {
+                    MatchProtocol.putEnd(connection.output(), 0, 0, 0);
+                    connection.flush();
+                }
+                endSession(session);
+            }
+        }
+    }
+
+    private void onMove(Connection connection, int tile) {
+        Session session = connection.session;
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            Match match = session.match;
+            int move = match.play(connection.seat, tile);
+            if (move == GameRules.MOVE_IGNORED) {
+                return;
+            }
+            moves.incrementAndGet();
+            int color = match.getGrid().getColor(tile);
+            for (Connection player : session.players) {
+                synchronized (player) {
+                    MatchProtocol.putReveal(player.output(), tile, color);
+                    if (match.isOver()) {
+                        MatchProtocol.putEnd(player.output(), match.getScore(0), match.getScore(1), -1);
+                    }
+                    player.flush();
+                }
+            }
+            if (match.isOver()) {
+                endSession(session);
+            }
+        }
+    }
+
+    private void onClose(Connection connection) {
+        synchronized (lobby) {
+            if (connection.waitingFor != null && lobby.get(connection.waitingFor) == connection) {
+                lobby.remove(connection.waitingFor);
+            }
+        }
+        Session session = connection.session;
+        if (session != null) {
+            synchronized (session) {
+                if (connection.session == session) {
+                    Match match = session.match;
+                    Connection other = session.players[(connection.seat + 1) % Match.SEATS];
+                    synchronized (other) {
+                        MatchProtocol.putEnd(other.output(), match.getScore(0), match.getScore(1), connection.seat);
+                        other.flush();
+                    }
+                    endSession(session);
+                }
+            }
+        }
+        connections.decrementAndGet();
+    }
+
+    // called with the session locked
+    private void endSession(Session session) {
+        for (Connection player : session.players) {
+            player.session = null;
+        }
+        matchesFinished.incrementAndGet();
+    }
+
+    private static class Session {
+
+        final Match        match;
+        final Connection[] players;
+
+        Session(Match match, Connection first, Connection second) {
+            this.match = match;
+            this.players = new Connection[]{first, second};
+        }
+    }
+
+    /**
+     * One client. Input is only touched by the owning worker; the output buffer is guarded by the connection.
+     */
+    private class Connection {
+
+        final SocketChannel channel;
+        final Worker        worker;
+        final ByteBuffer    input;
+        // in write mode, holds what could not be written yet
+        final ByteBuffer    output;
+
+        SelectionKey key;
+        // written with the session locked
+        volatile Session session;
+        int              seat;
+        // guarded by the lobby lock
+        Integer      waitingFor;
+
+        private boolean writeRequested;
+        private boolean open;
+        private boolean closed;
+
+        Connection(SocketChannel channel, Worker worker) {
+            this.channel = channel;
+            this.worker = worker;
+            this.input = ByteBuffer.allocate(MatchProtocol.MAX_SIZE * 64);
+            this.output = ByteBuffer.allocate(OUTPUT_CAPACITY);
+            this.open = true;
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * @return the output buffer, with room for one more message of any type, called with the connection locked
+         */
+        ByteBuffer output() {
+            if (output.remaining() < MatchProtocol.MAX_SIZE) {
+                // the client stopped reading, drop what it missed and let the worker close it
+                output.clear();
+                open = false;
+                worker.requestWrite(this);
+            }
+            return output;
+        }
+
+        /**
+         * Writes as much output as the socket takes right now; the worker writes the rest when it can.
+         * Called with the connection locked.
+         */
+        void flush() {
+            if (!open || writeRequested) {
+                return;
+            }
+            output.flip();
+            try {
+                channel.write(output);
+            } catch (IOException e) {
+                open = false;
+            }
+            output.compact();
+            if (output.position() > 0 || !open) {
+                writeRequested = true;
+                worker.requestWrite(this);
+            }
+        }
+
+        /**
+         * Called by the worker once the socket is writable or the connection must go.
+         *
+         * @return false if the connection is to be closed
+         */
+        synchronized boolean onWritable() {
+            if (!open) {
+                return false;
+            }
+            output.flip();
+            try {
+                channel.write(output);
+            } catch (IOException e) {
+                open = false;
+            }
+            output.compact();
+            writeRequested = output.position() > 0;
+            if (key.isValid()) {
+                key.interestOps(writeRequested ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+            return open;
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                open = false;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // don't care
+            }
+            onClose(this);
+        }
+    }
+
+    private class Worker extends Thread {
+
+        final Selector selector;
+
+        private final ConcurrentLinkedQueue<Connection> registrations;
+        private final ConcurrentLinkedQueue<Connection> writes;
+
+        Worker(int index) throws IOException {
+            super("MatchServer-" + index);
+            selector = Selector.open();
+            registrations = new ConcurrentLinkedQueue<Connection>();
+            writes = new ConcurrentLinkedQueue<Connection>();
+        }
+
+        void register(Connection connection) {
+            registrations.add(connection);
+            selector.wakeup();
+        }
+
+        void requestWrite(Connection connection) {
+            writes.add(connection);
+            // also when called by this worker, so the next select returns right away
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (!isClosed()) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    break;
+                }
+                applyRequests();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isWritable() && !connection.onWritable()) {
+                            connection.close();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                    } catch (RuntimeException e) {
+                        // a bug triggered by one client must not take the worker and its other clients down
+                        connection.close();
+                    }
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // don't care
+            }
+        }
+
+        private void applyRequests() {
+            Connection connection;
+            while ((connection = registrations.poll()) != null) {
+                try {
+                    connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (ClosedChannelException e) {
+                    connection.close();
+                }
+            }
+            while ((connection = writes.poll()) != null) {
+                if (connection.key != null && connection.key.isValid()) {
+                    try {
+                        if (!connection.onWritable()) {
+                            connection.close();
+                        }
+                    } catch (RuntimeException e) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+
+        private void read(Connection connection) {
+            ByteBuffer input = connection.input;
+            int read;
+            try {
+                read = connection.channel.read(input);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                connection.close();
+                return;
+            }
+
+            input.flip();
+            while (input.hasRemaining()) {
+                byte type = input.get(input.position());
+                int size = MatchProtocol.sizeOf(type);
+                if (size < 0) {
+                    connection.close();
+                    return;
+                }
+                if (input.remaining() < size) {
+                    break;
+                }
+                input.get();
+                switch (type) {
+                    case MatchProtocol.JOIN:
+                        int rows = input.getShort() & 0xffff;
+                        int cols = input.getShort() & 0xffff;
+                        onJoin(connection, rows, cols);
+                        break;
+                    case MatchProtocol.MOVE:
+                        onMove(connection, input.getInt());
+                        break;
+                    default:
+                        // server messages are not expected from clients
+                        connection.close();
+                        return;
+                }
+            }
+            input.compact();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : MatchProtocol.DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        MatchServer server = new MatchServer(new InetSocketAddress(port), threads);
+        server.start();
+        System.out.println("listening on " + server.getPort() + " with " + threads + " threads");
+        while (true) {
+            Thread.sleep(10000);
+            System.out.println(server.getConnections() + " connections, "
+                               + server.getMatchesStarted() + " matches started, "
+                               + server.getMatchesFinished() + " finished, "
+                               + server.getMoves() + " moves");
+        }
+    }
+}
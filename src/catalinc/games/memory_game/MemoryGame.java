@@ -1,38 +1,115 @@
 package catalinc.games.memory_game;
 
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
 import android.os.Bundle;
+import android.text.InputType;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.SubMenu;
+import android.widget.EditText;
+import android.widget.SeekBar;
 import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
 
 public class MemoryGame extends Activity {
 
     private static final int MENU_NEW_GAME = 1;
     private static final int MENU_RESUME   = 2;
     private static final int MENU_EXIT     = 3;
-
+    private static final int MENU_BOARD    = 4;
+    private static final int MENU_RENDERER = 5;
+    private static final int MENU_REPLAY   = 6;
+    private static final int MENU_ONLINE   = 7;
+    private static final int MENU_METRICS  = 8;
+
+    // appended to by the metrics menu entry, in the external files directory so QA can pull it without root
+    private static final String METRICS_FILE = "metrics.txt";
+
+    // rows, cols; menu ids of the board sizes are MENU_BOARD_SIZE + index
+    private static final int[][] BOARD_SIZES     = {{GameThread.DEFAULT_ROWS, GameThread.DEFAULT_COLS},
+                                                    {6, 6},
+                                                    {8, 6},
+                                                    {12, 8},
+                                                    {24, 16}};
+    private static final int     MENU_BOARD_SIZE = 100;
+
+    // below this battery percentage, when not charging, or above this temperature in tenths of a degree Celsius
+    // the frame rate is capped
+    private static final int LOW_BATTERY_PERCENT = 15;
+    private static final int HOT_BATTERY_TEMP    = 420;
+
+    // last match server entered, host or host:port
+    private static final String PREF_SERVER      = "server";
+    // renderer picked from the menu, see RenderThread
+    private static final String PREF_RENDER_MODE = "render_mode";
+
+    private GameView   mGameView;
     private GameThread mGameThread;
 
+    private final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            int temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+
+            boolean low = level >= 0 && scale > 0 && plugged == 0 && level * 100 / scale < LOW_BATTERY_PERCENT;
+            boolean hot = temperature >= HOT_BATTERY_TEMP;
+            mGameThread.setPowerSaving(low || hot);
+        }
+    };
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         setContentView(R.layout.memorygame_layout);
 
-        final GameView mGameView = (GameView) findViewById(R.id.main);
+        mGameView = (GameView) findViewById(R.id.main);
         mGameView.setStatusView((TextView) findViewById(R.id.status));
         mGameView.setScoreView((TextView) findViewById(R.id.score));
+        mGameView.setTimerView((TextView) findViewById(R.id.timer));
+        mGameView.setReplayView((SeekBar) findViewById(R.id.replay));
 
         mGameThread = mGameView.getGameThread();
+        mGameThread.setMaxFrameRate((int) getWindowManager().getDefaultDisplay().getRefreshRate());
+        // before the surface is created, so the renderer is picked before anything is drawn on it
+        mGameView.setRenderMode(getPreferences(MODE_PRIVATE).getInt(PREF_RENDER_MODE, RenderThread.RENDER_CANVAS));
         if (savedInstanceState != null) {
             mGameThread.restoreState(savedInstanceState);
+        } else {
+            mGameThread.restorePersistedState();
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mGameThread.release();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // sticky, the current battery state is delivered right away
+        registerReceiver(mBatteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
+        unregisterReceiver(mBatteryReceiver);
         mGameThread.pause();
     }
 
@@ -48,6 +125,14 @@ public class MemoryGame extends Activity {
 
         menu.add(0, MENU_NEW_GAME, 0, R.string.menu_new_game);
         menu.add(0, MENU_RESUME, 0, R.string.menu_resume);
+        menu.add(0, MENU_REPLAY, 0, R.string.menu_replay);
+        menu.add(0, MENU_ONLINE, 0, R.string.menu_play_online);
+        SubMenu boardMenu = menu.addSubMenu(0, MENU_BOARD, 0, R.string.menu_board_size);
+        for (int i = 0; i < BOARD_SIZES.length; i++) {
+            boardMenu.add(0, MENU_BOARD_SIZE + i, 0, BOARD_SIZES[i][1] + " x " + BOARD_SIZES[i][0]);
+        }
+        menu.add(0, MENU_RENDERER, 0, R.string.menu_toggle_opengl);
+        menu.add(0, MENU_METRICS, 0, R.string.menu_save_metrics);
         menu.add(0, MENU_EXIT, 0, R.string.menu_exit);
 
         return true;
@@ -66,10 +151,101 @@ public class MemoryGame extends Activity {
                 break;
             case MENU_RESUME:
                 mGameThread.unPause();
+                break;
+            case MENU_REPLAY:
+                mGameThread.startReplay();
+                break;
+            case MENU_ONLINE:
+                showServerDialog();
+                break;
+            case MENU_METRICS:
+                saveMetrics();
+                break;
+            case MENU_RENDERER:
+                toggleRenderMode();
+                break;
+            default:
+                int board = item.getItemId() - MENU_BOARD_SIZE;
+                if (board >= 0 && board < BOARD_SIZES.length) {
+                    mGameThread.setBoardSize(BOARD_SIZES[board][0], BOARD_SIZES[board][1]);
+                    mGameThread.startNewGame();
+                }
         }
         return true;
     }
 
+    /**
+     * Switches between the canvas and the OpenGL renderer, from the one actually in use, and remembers the choice.
+     */
+    private void toggleRenderMode() {
+        int renderMode = mGameThread.getRenderMode() == RenderThread.RENDER_GL
+                ? RenderThread.RENDER_CANVAS : RenderThread.RENDER_GL;
+        getPreferences(MODE_PRIVATE).edit().putInt(PREF_RENDER_MODE, renderMode).commit();
+        mGameView.setRenderMode(renderMode);
+    }
+
+    /**
+     * Appends the game loop metrics collected since the previous save, or the start, to the metrics file.
+     */
+    private void saveMetrics() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            // no shared storage mounted
+            dir = getFilesDir();
+        }
+        File file = new File(dir, METRICS_FILE);
+        mGameThread.dumpMetrics(file);
+        Toast.makeText(this, getString(R.string.metrics_saved, file.getPath()), Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Asks for the match server, offering the last one entered, and joins a match on it.
+     */
+    private void showServerDialog() {
+        final SharedPreferences preferences = getPreferences(MODE_PRIVATE);
+        final EditText input = new EditText(this);
+        input.setSingleLine();
+        input.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_URI);
+        input.setSelectAllOnFocus(true);
+        input.setText(preferences.getString(PREF_SERVER, getString(R.string.server_host)));
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.online_server)
+                .setView(input)
+                .setPositiveButton(R.string.online_connect, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String server = input.getText().toString().trim();
+                        preferences.edit().putString(PREF_SERVER, server).commit();
+                        playOnline(server);
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * @param server host or host:port, the default host and port if missing
+     */
+    private void playOnline(String server) {
+        String host = server;
+        int port = MatchProtocol.DEFAULT_PORT;
+        int colon = server.lastIndexOf(':');
+        // more than one colon is an IPv6 address without a port
+        if (colon >= 0 && colon == server.indexOf(':')) {
+            host = server.substring(0, colon);
+            try {
+                port = Integer.parseInt(server.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                // keep the default port
+            }
+        }
+        if (host.length() == 0) {
+            host = getString(R.string.server_host);
+        }
+        mGameView.playOnline(host, port);
+    }
+
     @Override
     public void onBackPressed() {
         if (mGameThread.onBack()) {
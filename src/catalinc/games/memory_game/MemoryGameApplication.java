@@ -0,0 +1,40 @@
+package catalinc.games.memory_game;
+
+import android.app.Application;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * Owns the stores for the life of the process. A configuration change destroys the activity and its game thread
+ * and creates new ones; had each game thread opened its own stores, the new store thread could open the files while
+ * the old one was still writing them.
+ */
+public class MemoryGameApplication extends Application {
+
+    private SnapshotStore mSnapshotStore;
+    private ScoreStore    mScoreStore;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        Callable<File> filesDir = new Callable<File>() {
+            @Override
+            public File call() {
+                return getFilesDir();
+            }
+        };
+        mSnapshotStore = new SnapshotStore(filesDir);
+        mScoreStore = new ScoreStore(filesDir);
+        mScoreStore.load(null);
+    }
+
+    SnapshotStore getSnapshotStore() {
+        return mSnapshotStore;
+    }
+
+    ScoreStore getScoreStore() {
+        return mScoreStore;
+    }
+}
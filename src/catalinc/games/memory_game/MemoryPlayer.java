@@ -0,0 +1,241 @@
+package catalinc.games.memory_game;
+
+import java.util.Random;
+
+/**
+ * Plays like a person with a limited memory: remembers the colors of the last {@code capacity} tiles it saw and
+ * forgets the least recently seen one when it sees a new one.
+ * <p/>
+ * It completes a pair whenever it remembers both tiles, and otherwise turns a random tile it doesn't remember.
+ * With an unlimited capacity it never turns a known tile without completing a pair, which is close to the best
+ * any player can do. Every decision takes constant time, so large boards are played as fast as small ones.
+ */
+public class MemoryPlayer implements Player {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    public static final Factory PERFECT = factory(UNLIMITED);
+
+    /**
+     * @param capacity tiles remembered, at least 1
+     */
+    public static Factory factory(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        return new Factory() {
+            @Override
+            public Player create(Random random) {
+                return new MemoryPlayer(random, capacity);
+            }
+        };
+    }
+
+    private final Random random;
+    private final int    capacity;
+
+    private Grid grid;
+
+    // color of every remembered tile, -1 if forgotten or never seen
+    private int[] colorAt;
+    // the remembered tiles of every color, -1 if none
+    private int[] firstOf;
+    private int[] secondOf;
+    // colors whose both tiles were remembered, possibly solved or forgotten since
+    private int[]     knownPairs;
+    private int       knownPairCount;
+    private boolean[] knownPair;
+
+    // remembered tiles from the most to the least recently seen
+    private int[] newer;
+    private int[] older;
+    private int   newest;
+    private int   oldest;
+    private int   remembered;
+
+    // tiles that may be hidden and are not remembered, with the position of every tile in the list, -1 if absent
+    private int[] unknown;
+    private int[] unknownPosition;
+    private int   unknownCount;
+
+    public MemoryPlayer(Random random, int capacity) {
+        this.random = random;
+        this.capacity = capacity;
+        this.colorAt = new int[0];
+    }
+
+    @Override
+    public void newGame(Grid grid) {
+        this.grid = grid;
+        int size = grid.size();
+        if (colorAt.length != size) {
+            colorAt = new int[size];
+            firstOf = new int[size / 2];
+            secondOf = new int[size / 2];
+            knownPairs = new int[size / 2];
+            knownPair = new boolean[size / 2];
+            newer = new int[size];
+            older = new int[size];
+            unknown = new int[size];
+            unknownPosition = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            colorAt[i] = -1;
+            unknown[i] = i;
+            unknownPosition[i] = i;
+        }
+        for (int c = 0; c < firstOf.length; c++) {
+            firstOf[c] = -1;
+            secondOf[c] = -1;
+            knownPair[c] = false;
+        }
+        knownPairCount = 0;
+        newest = -1;
+        oldest = -1;
+        remembered = 0;
+        unknownCount = size;
+    }
+
+    @Override
+    public int nextMove(Grid grid) {
+        int selected = grid.getSelectedIndex();
+        if (selected >= 0) {
+            int color = colorAt[selected];
+            if (color >= 0) {
+                int partner = firstOf[color] == selected ? secondOf[color] : firstOf[color];
+                if (partner >= 0) {
+                    return partner;
+                }
+            }
+            return pickUnknown(selected);
+        }
+
+        while (knownPairCount > 0) {
+            int color = knownPairs[--knownPairCount];
+            knownPair[color] = false;
+            int first = firstOf[color];
+            if (first >= 0 && secondOf[color] >= 0 && grid.getState(first) == Tile.STATE_HIDDEN) {
+                // the partner is played on the next move
+                return first;
+            }
+        }
+        return pickUnknown(-1);
+    }
+
+    @Override
+    public void onReveal(int index, int color) {
+        if (grid.getState(index) == Tile.STATE_SOLVED) {
+            int first = firstOf[color];
+            int second = secondOf[color];
+            forget(first);
+            forget(second);
+            forget(index);
+            removeUnknown(index);
+            return;
+        }
+        removeUnknown(index);
+        if (colorAt[index] >= 0) {
+            unlink(index);
+        } else {
+            colorAt[index] = color;
+            if (firstOf[color] < 0) {
+                firstOf[color] = index;
+            } else {
+                secondOf[color] = index;
+                if (!knownPair[color]) {
+                    knownPair[color] = true;
+                    knownPairs[knownPairCount++] = color;
+                }
+            }
+            remembered++;
+        }
+        linkNewest(index);
+        if (remembered > capacity) {
+            int forgotten = oldest;
+            forget(forgotten);
+            addUnknown(forgotten);
+        }
+    }
+
+    /**
+     * @return a random tile not remembered other than {@code exclude}; a remembered hidden tile if there is none
+     */
+    private int pickUnknown(int exclude) {
+        while (unknownCount > 0) {
+            int index = unknown[random.nextInt(unknownCount)];
+            int state = grid.getState(index);
+            if (state == Tile.STATE_HIDDEN) {
+                return index;
+            }
+            if (state == Tile.STATE_SOLVED) {
+                removeUnknown(index);
+            } else if (unknownCount == 1) {
+                // only the selected tile is left
+                break;
+            }
+        }
+        for (int index = oldest; index >= 0; index = newer[index]) {
+            if (index != exclude && grid.getState(index) == Tile.STATE_HIDDEN) {
+                return index;
+            }
+        }
+        return exclude;
+    }
+
+    private void forget(int index) {
+        if (index < 0 || colorAt[index] < 0) {
+            return;
+        }
+        int color = colorAt[index];
+        if (firstOf[color] == index) {
+            firstOf[color] = secondOf[color];
+        }
+        secondOf[color] = -1;
+        colorAt[index] = -1;
+        unlink(index);
+        remembered--;
+    }
+
+    private void linkNewest(int index) {
+        older[index] = newest;
+        newer[index] = -1;
+        if (newest >= 0) {
+            newer[newest] = index;
+        } else {
+            oldest = index;
+        }
+        newest = index;
+    }
+
+    private void unlink(int index) {
+        int n = newer[index];
+        int o = older[index];
+        if (n >= 0) {
+            older[n] = o;
+        } else {
+            newest = o;
+        }
+        if (o >= 0) {
+            newer[o] = n;
+        } else {
+            oldest = n;
+        }
+    }
+
+    private void addUnknown(int index) {
+        if (unknownPosition[index] < 0) {
+            unknown[unknownCount] = index;
+            unknownPosition[index] = unknownCount++;
+        }
+    }
+
+    private void removeUnknown(int index) {
+        int position = unknownPosition[index];
+        if (position >= 0) {
+            int last = unknown[--unknownCount];
+            unknown[position] = last;
+            unknownPosition[last] = position;
+            unknownPosition[index] = -1;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package catalinc.games.memory_game;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Record of one game: the seed its board was dealt with and every accepted move, each packed into a long as
+ * {@code elapsedMillis << 32 | tile}. Ignored moves don't change the game, so they are not recorded.
+ * <p/>
+ * Every so many moves the board is copied into a keyframe: the selected tile, the solved count and the packed cells.
+ * Seeking restores the nearest keyframe at or before the target and plays only the moves after it. The interval
+ * grows with the board, at least {@link #MIN_KEYFRAME_INTERVAL} moves and no fewer moves than tiles, so keyframes
+ * take about as much room as the moves themselves and seeking plays about as many moves as it copies cells.
+ * <p/>
+ * Recording doesn't allocate once the log is sized for the game; {@link #start(int, int, long)} sizes it for a
+ * long game on the board and reuses the arrays of the previous game when they are big enough, longer games grow it.
+ * Not thread safe.
+ */
+public class MoveLog {
+
+    static final int MIN_KEYFRAME_INTERVAL = 32;
+
+    // keyframe layout: selected tile, solved tiles, then the cells
+    private static final int KEYFRAME_HEADER = 2;
+    // initial capacity, in moves per tile
+    private static final int MOVES_PER_TILE  = 8;
+
+    private int  rows;
+    private int  cols;
+    private long seed;
+
+    private long[] moves;
+    private int    count;
+
+    private int[] keyframes;
+    private int   keyframeCount;
+    private int   keyframeInterval;
+    private int   solved;
+
+    public MoveLog() {
+        moves = new long[0];
+        keyframes = new int[0];
+        keyframeInterval = MIN_KEYFRAME_INTERVAL;
+    }
+
+    /**
+     * Starts recording a game dealt with {@code seed}, dropping the previous one.
+     */
+    public void start(int rows, int cols, long seed) {
+        this.rows = rows;
+        this.cols = cols;
+        this.seed = seed;
+        count = 0;
+        keyframeCount = 0;
+        solved = 0;
+
+        // at most Grid.MAX_TILES, the sizes below fit an int
+        int tiles = rows * cols;
+        keyframeInterval = Math.max(MIN_KEYFRAME_INTERVAL, tiles);
+        int capacity = tiles * MOVES_PER_TILE;
+        if (moves.length < capacity) {
+            moves = new long[capacity];
+        }
+        int keyframeSize = (capacity / keyframeInterval) * (tiles + KEYFRAME_HEADER);
+        if (keyframes.length < keyframeSize) {
+            keyframes = new int[keyframeSize];
+        }
+    }
+
+    /**
+     * Forgets the recorded game, for example when a game that was not recorded is restored.
+     */
+    public void clear() {
+        rows = 0;
+        cols = 0;
+        count = 0;
+        keyframeCount = 0;
+    }
+
+    /**
+     * @return true if a game is being, or was, recorded
+     */
+    public boolean isStarted() {
+        return rows > 0;
+    }
+
+    /**
+     * Appends a move, once it was played on {@code grid}.
+     *
+     * @param move          one of the {@code GameRules.MOVE_} constants, ignored moves are dropped
+     * @param elapsedMillis playing time of the move
+     */
+    public void record(Grid grid, int tile, int move, long elapsedMillis) {
+        if (move == GameRules.MOVE_IGNORED || !isStarted()) {
+            return;
+        }
+        if (count == moves.length) {
+            moves = Arrays.copyOf(moves, Math.max(count * 2, 16));
+        }
+        moves[count++] = (elapsedMillis << 32) | tile;
+        if (move == GameRules.MOVE_PAIR) {
+            solved += 2;
+        }
+        if (count % keyframeInterval == 0) {
+            addKeyframe(grid);
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getMoveCount() {
+        return count;
+    }
+
+    public int getTile(int move) {
+        return (int) moves[move];
+    }
+
+    public long getElapsedMillis(int move) {
+        return moves[move] >>> 32;
+    }
+
+    /**
+     * @return moves between keyframes of the game being recorded
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Puts {@code engine} in the state after the first {@code move} moves, its timer paused at the time of the
+     * last of them. Costs one board copy plus less than {@link #getKeyframeInterval()} moves, wherever the target
+     * is.
+     */
+    public void seek(GameEngine engine, int move) {
+        move = Math.min(Math.max(move, 0), count);
+        int keyframe = Math.min(move / keyframeInterval, keyframeCount);
+
+        Grid grid = new Grid(rows, cols, 0, 0);
+        int keyframeSolved;
+        if (keyframe == 0) {
+            GameRules.setupGrid(grid, new Random(seed));
+            keyframeSolved = 0;
+        } else {
+            int offset = (keyframe - 1) * (grid.size() + KEYFRAME_HEADER);
+            grid.setCells(keyframes, offset + KEYFRAME_HEADER, keyframes[offset]);
+            keyframeSolved = keyframes[offset + 1];
+        }
+
+        long elapsedMillis = move > 0 ? getElapsedMillis(move - 1) : 0;
+        StopWatch stopWatch = new StopWatch(elapsedMillis * 1000000, engine.getClock());
+        int first = keyframe * keyframeInterval;
+        engine.restore(grid, keyframeSolved, first, stopWatch);
+        for (int i = first; i < move; i++) {
+            engine.select(getTile(i));
+        }
+    }
+
+    private void addKeyframe(Grid grid) {
+        int size = grid.size() + KEYFRAME_HEADER;
+        int offset = keyframeCount * size;
+        if (offset + size > keyframes.length) {
+            keyframes = Arrays.copyOf(keyframes, Math.max(keyframes.length * 2, offset + size));
+        }
+        keyframes[offset] = grid.getSelectedIndex();
+        keyframes[offset + 1] = solved;
+        grid.copyCells(keyframes, offset + KEYFRAME_HEADER);
+        keyframeCount++;
+    }
+}
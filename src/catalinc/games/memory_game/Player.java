@@ -0,0 +1,33 @@
+package catalinc.games.memory_game;
+
+import java.util.Random;
+
+/**
+ * Automated player for headless games. A player only plays one game at a time and is not thread safe.
+ */
+public interface Player {
+
+    /**
+     * Called before the first move of every game.
+     */
+    void newGame(Grid grid);
+
+    /**
+     * @return index of the tile to play next; the player may only rely on tiles it saw through
+     * {@link #onReveal(int, int)}
+     */
+    int nextMove(Grid grid);
+
+    /**
+     * Called after every accepted move with the color of the tile that was turned.
+     */
+    void onReveal(int index, int color);
+
+    interface Factory {
+
+        /**
+         * @param random the only source of randomness the player may use
+         */
+        Player create(Random random);
+    }
+}
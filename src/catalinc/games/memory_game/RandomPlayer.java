@@ -0,0 +1,41 @@
+package catalinc.games.memory_game;
+
+import java.util.Random;
+
+/**
+ * Remembers nothing and turns random hidden tiles. The baseline other players are compared with.
+ */
+public class RandomPlayer implements Player {
+
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public Player create(Random random) {
+            return new RandomPlayer(random);
+        }
+    };
+
+    private final Random random;
+
+    public RandomPlayer(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public void newGame(Grid grid) {
+    }
+
+    @Override
+    public int nextMove(Grid grid) {
+        // at least two tiles are hidden while the game is not over
+        while (true) {
+            int index = random.nextInt(grid.size());
+            if (grid.getState(index) == Tile.STATE_HIDDEN) {
+                return index;
+            }
+        }
+    }
+
+    @Override
+    public void onReveal(int index, int color) {
+    }
+}
@@ -0,0 +1,271 @@
+package catalinc.games.memory_game;
+
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws the frames published by the {@link GameThread} through a {@link TileRenderer}. Never touches the game state.
+ * <p/>
+ * The thread parks when the latest frame is fully on screen and nothing is animating.
+ * <p/>
+ * The renderer is picked when a surface is attached, before anything is drawn on it: once a canvas has been locked
+ * the surface cannot be handed to OpenGL, so {@link #setRenderMode(int)} takes effect on the next surface. If OpenGL
+ * is not available the canvas renderer is used instead, and OpenGL is tried again on the next surface.
+ * <p/>
+ * While animating, frames are paced by a {@link FramePacer}, which lowers the rate or the animation quality when
+ * frames get too expensive and caps the rate in power saving mode.
+ * <p/>
+ * Nothing is drawn until {@link #attachSurface()}. {@link #detachSurface()} waits until the surface is no longer
+ * used; the thread then waits for the next surface, keeping the renderer and its caches.
+ */
+public class RenderThread extends Thread {
+
+    public static final int RENDER_CANVAS = 0;
+    public static final int RENDER_GL     = 1;
+
+    private static final int DEFAULT_MAX_FRAME_RATE = 60;
+
+    // based on Solarized color palette
+    private static final int BACKGROUND_COLOR  = Color.parseColor("#002B36");
+    private static final int HIDDEN_TILE_COLOR = Color.parseColor("#073642");
+
+    private final SurfaceHolder mSurfaceHolder;
+    private final FrameExchange mFrames;
+    private final GameMetrics   mMetrics;
+    private final int           mTickMillis;
+    private final int           mFadeTicks;
+
+    private volatile boolean mRun;
+    private volatile boolean mInvalidated;
+    // requested, and in use, which differs until the next surface or if OpenGL is not available
+    private volatile int     mRenderMode;
+    private volatile int     mActiveRenderMode;
+
+    private final SurfaceHandoff mSurface;
+
+    private TileRenderer mRenderer;
+
+    private final FramePacer mPacer;
+
+    /**
+     * @param tickMillis length of a simulation tick, used to interpolate animations
+     * @param fadeTicks  length of the solved tiles fade, in ticks
+     */
+    RenderThread(SurfaceHolder surfaceHolder, FrameExchange frames, GameMetrics metrics,
+                 int tickMillis, int fadeTicks) {
+        super("RenderThread");
+        mSurfaceHolder = surfaceHolder;
+        mFrames = frames;
+        mMetrics = metrics;
+        mTickMillis = tickMillis;
+        mFadeTicks = fadeTicks;
+
+        mRun = false;
+        mInvalidated = true;
+        mRenderMode = RENDER_CANVAS;
+        mActiveRenderMode = RENDER_CANVAS;
+        mPacer = new FramePacer(DEFAULT_MAX_FRAME_RATE);
+
+        mSurface = new SurfaceHandoff();
+    }
+
+    @Override
+    public void run() {
+        try {
+            render();
+        } finally {
+            // also on failure, detachSurface() must not wait forever
+            if (mRenderer != null) {
+                mRenderer.release();
+                mRenderer = null;
+            }
+            mSurface.release();
+        }
+    }
+
+    private void render() {
+        long lastFrameNanos = 0;
+        while (mRun) {
+            if (!awaitSurface()) {
+                break;
+            }
+            if (mInvalidated) {
+                mInvalidated = false;
+                mRenderer.invalidate();
+            }
+
+            mMetrics.applyRenderReset();
+            mFrames.acquire();
+            Frame frame = mFrames.getFront();
+
+            boolean reduced = mPacer.getQuality() == FramePacer.QUALITY_REDUCED;
+            long now = SystemClock.uptimeMillis();
+            float interpolation = reduced ? 0
+                    : Math.min(Math.max((float) (now - frame.tickTime) / mTickMillis, 0), 1);
+
+            long frameStart = System.nanoTime();
+            if (!mRenderer.prepare(frame)) {
+                LockSupport.park(this);
+                lastFrameNanos = 0;
+                continue;
+            }
+            long prepareTime = System.nanoTime() - frameStart;
+
+            long drawTime = mRenderer.draw(frame, interpolation);
+            if (drawTime < 0) {
+                // surface is not ready, avoid spinning
+                sleepFor(mTickMillis);
+                continue;
+            }
+
+            long frameNanos = System.nanoTime();
+            if (lastFrameNanos != 0) {
+                mMetrics.getFrameTime().record(frameNanos - lastFrameNanos);
+            }
+            lastFrameNanos = frameNanos;
+            if (frame.inputTime != 0) {
+                mMetrics.getInputLatency().record((SystemClock.uptimeMillis() - frame.inputTime) * 1000000);
+                // measured once per frame
+                frame.inputTime = 0;
+            }
+
+            long next = mPacer.onFrame(frameStart, prepareTime + drawTime, frameNanos);
+            mMetrics.setFrameRate(mPacer.getFrameRate(), mPacer.getQuality());
+            if (reduced) {
+                // animations only move on logic ticks, wait for the next frame
+                LockSupport.park(this);
+            } else {
+                sleepUntil(next);
+            }
+        }
+    }
+
+    void setRunning(boolean running) {
+        mRun = running;
+        mSurface.setRunning(running);
+        wakeUp();
+    }
+
+    /**
+     * Called when the surface is created, drawing starts again with a full frame.
+     */
+    void attachSurface() {
+        mSurface.attach();
+        wakeUp();
+    }
+
+    /**
+     * Called when the surface is destroyed, returns once the surface is no longer used.
+     */
+    void detachSurface() {
+        mSurface.detach(this);
+    }
+
+    /**
+     * @param renderMode {@link #RENDER_CANVAS} or {@link #RENDER_GL}, applied when the next surface is attached
+     */
+    void setRenderMode(int renderMode) {
+        mRenderMode = renderMode;
+    }
+
+    /**
+     * @return renderer drawing on the current surface, or the last one
+     */
+    int getRenderMode() {
+        return mActiveRenderMode;
+    }
+
+    /**
+     * @param maxFrameRate refresh rate of the display
+     */
+    void setMaxFrameRate(int maxFrameRate) {
+        mPacer.setMaxRate(maxFrameRate);
+    }
+
+    void setPowerSaving(boolean powerSaving) {
+        mPacer.setPowerSaving(powerSaving);
+    }
+
+    /**
+     * Called by the producer after publishing a frame.
+     */
+    void wakeUp() {
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Forces the next frame to be fully redrawn, for example after the surface changed.
+     */
+    void invalidate() {
+        mInvalidated = true;
+        wakeUp();
+    }
+
+    /**
+     * Hands the surface back if it was detached, then waits until one is attached.
+     *
+     * @return false if the thread is stopping
+     */
+    private boolean awaitSurface() {
+        if (mSurface.isHeld()) {
+            return true;
+        }
+        if (mSurface.isInUse()) {
+            if (mRenderer != null) {
+                mRenderer.detach();
+            }
+            mSurface.release();
+        }
+        if (!mSurface.acquire()) {
+            return false;
+        }
+        // nothing has been drawn on the new surface yet, so any renderer can take it
+        if (mRenderer == null || mActiveRenderMode != mRenderMode || !mRenderer.init()) {
+            switchRenderer(mRenderMode);
+        }
+        return true;
+    }
+
+    /**
+     * Must only be called on a surface nothing was drawn on yet.
+     */
+    private void switchRenderer(int renderMode) {
+        if (mRenderer != null) {
+            mRenderer.release();
+        }
+        mRenderer = null;
+        if (renderMode == RENDER_GL) {
+            mRenderer = new GlTileRenderer(mSurfaceHolder, mMetrics, mFadeTicks, BACKGROUND_COLOR, HIDDEN_TILE_COLOR);
+            if (mRenderer.init()) {
+                mActiveRenderMode = RENDER_GL;
+                return;
+            }
+            mRenderer = null;
+        }
+        mRenderer = new CanvasTileRenderer(mSurfaceHolder, mMetrics, mFadeTicks, BACKGROUND_COLOR, HIDDEN_TILE_COLOR);
+        mRenderer.init();
+        mActiveRenderMode = RENDER_CANVAS;
+    }
+
+    /**
+     * Waits until {@code deadline}, in {@link System#nanoTime()} time. Wake ups from new frames don't end the wait,
+     * that is what keeps the frame rate.
+     */
+    private void sleepUntil(long deadline) {
+        long wait;
+        while (mRun && (wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    private static void sleepFor(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // don't care
+        }
+    }
+}
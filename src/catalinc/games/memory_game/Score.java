@@ -0,0 +1,45 @@
+package catalinc.games.memory_game;
+
+/**
+ * Result of a finished game.
+ */
+public class Score {
+
+    private final int  rows;
+    private final int  cols;
+    private final long date;
+    private final int  elapsed;
+    private final int  moves;
+
+    /**
+     * @param date    wall-clock time the game ended
+     * @param elapsed playing time in milliseconds
+     */
+    public Score(int rows, int cols, long date, int elapsed, int moves) {
+        this.rows = rows;
+        this.cols = cols;
+        this.date = date;
+        this.elapsed = elapsed;
+        this.moves = moves;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public int getElapsed() {
+        return elapsed;
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+}
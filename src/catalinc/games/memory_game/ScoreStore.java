@@ -0,0 +1,567 @@
+package catalinc.games.memory_game;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * High scores, kept in an append-only file and indexed in memory by board size.
+ * <p/>
+ * The file starts with a magic number and a version, followed by fixed-size records: end date, board size,
+ * elapsed milliseconds, moves and a CRC32 of the record. A corrupt record is skipped, a torn last record ignored.
+ * Before anything is appended, a torn last record is cut off and a file with an unknown header is moved aside to
+ * {@code scores.dat.corrupt}, so new scores never land where they cannot be read back.
+ * New scores are indexed right away and written in batches on a background thread.
+ * <p/>
+ * For every board size the index keeps the scores in arrival order, a ranking from the fastest to the slowest game
+ * and a date order. Ties in the ranking go to fewer moves, then to the earlier game. Dates come from the wall clock,
+ * which may be set back, so arrival order is not trusted to be date order; a score is inserted into the date order
+ * by binary search, which is an append while the clock moves forward. Queries are safe from any thread.
+ */
+public class ScoreStore {
+
+    public interface LoadCallback {
+        /**
+         * Called on the store thread, once the index is ready.
+         *
+         * @param count number of scores read from the file
+         */
+        void onLoaded(int count);
+    }
+
+    private static final String SCORES_FILE = "scores.dat";
+    private static final String CORRUPT_FILE = "scores.dat.corrupt";
+    private static final int    MAGIC       = 0x4d475343;
+    private static final int    VERSION     = 1;
+    private static final int    HEADER_SIZE = 8;
+    private static final int    RECORD_SIZE = 24;
+
+    private static final int FLUSH_DELAY_MILLIS = 2000;
+    private static final int FLUSH_BATCH        = 256;
+
+    private final Callable<File>           directorySupplier;
+    private final ScheduledExecutorService executor;
+
+    private final Object                   lock;
+    // guarded by lock
+    private final Map<Integer, ScoreTable> tables;
+    private       List<Score>              pending;
+    private       boolean                  loaded;
+    private       boolean                  flushScheduled;
+
+    // only touched on the store thread
+    private File             directory;
+    private FileOutputStream out;
+    // the file could not be read or repaired, appending to it could lose the new scores too
+    private boolean          unwritable;
+
+    /**
+     * @param directorySupplier resolves the storage directory, called on the store thread
+     */
+    public ScoreStore(Callable<File> directorySupplier) {
+        this.directorySupplier = directorySupplier;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ScoreStore");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.lock = new Object();
+        this.tables = new HashMap<Integer, ScoreTable>();
+        this.pending = new ArrayList<Score>();
+    }
+
+    /**
+     * Reads the file and builds the index in the background. Queries return nothing until it is done.
+     */
+    public void load(final LoadCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Map<Integer, ScoreTable> read = new HashMap<Integer, ScoreTable>();
+                int count;
+                try {
+                    count = doLoad(read);
+                } catch (IOException e) {
+                    count = 0;
+                    unwritable = true;
+                }
+                for (ScoreTable table : read.values()) {
+                    table.rank();
+                }
+                synchronized (lock) {
+                    tables.putAll(read);
+                    // added while loading, not in the file yet
+                    for (Score score : pending) {
+                        index(score);
+                    }
+                    loaded = true;
+                }
+                if (callback != null) {
+                    callback.onLoaded(count);
+                }
+            }
+        });
+    }
+
+    /**
+     * Indexes the score and queues it for writing, never blocks on I/O.
+     */
+    public void add(Score score) {
+        synchronized (lock) {
+            pending.add(score);
+            if (loaded) {
+                index(score);
+            }
+            if (pending.size() >= FLUSH_BATCH) {
+                flushScheduled = true;
+                executor.execute(flushTask());
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(flushTask(), FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public int getCount(int rows, int cols) {
+        synchronized (lock) {
+            ScoreTable table = tables.get(boardKey(rows, cols));
+            return table != null ? table.size : 0;
+        }
+    }
+
+    /**
+     * @return up to {@code n} best scores of the board size, best first
+     */
+    public List<Score> getTop(int rows, int cols, int n) {
+        return getTop(rows, cols, n, Long.MIN_VALUE);
+    }
+
+    /**
+     * Finds the games since the date in the date order. When they are few, for example today's games among a year
+     * of them, they are ranked on their own; otherwise the ranking is walked until {@code n} of them are found,
+     * whichever is expected to take fewer steps.
+     *
+     * @param since only games that ended at or after this date count, for example today's best
+     * @return up to {@code n} best scores of the board size, best first
+     */
+    public List<Score> getTop(int rows, int cols, int n, long since) {
+        List<Score> top = new ArrayList<Score>(Math.max(Math.min(n, 64), 0));
+        synchronized (lock) {
+            ScoreTable table = tables.get(boardKey(rows, cols));
+            if (table == null || n <= 0) {
+                return top;
+            }
+            int first = table.firstSince(since);
+            int recent = table.size - first;
+            if (recent == 0) {
+                return top;
+            }
+            // walking the ranking takes about n * size / recent steps, ranking the recent games recent * log2(recent)
+            double walkSteps = (double) n * table.size / recent;
+            double sortSteps = recent * (32 - Integer.numberOfLeadingZeros(recent));
+            if (sortSteps < walkSteps) {
+                int[] recentGames = Arrays.copyOfRange(table.byDate, first, table.size);
+                table.sort(recentGames, new int[recent], 0, recent);
+                for (int r = 0; r < recent && top.size() < n; r++) {
+                    top.add(table.toScore(rows, cols, recentGames[r]));
+                }
+            } else {
+                for (int r = 0; r < table.size && top.size() < n; r++) {
+                    int i = table.ranking[r];
+                    if (table.dates[i] >= since) {
+                        top.add(table.toScore(rows, cols, i));
+                    }
+                }
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @param percentile between 0 and 100, lower is faster
+     * @return elapsed milliseconds of the game at the percentile, -1 if there are no scores
+     */
+    public int getElapsedAtPercentile(int rows, int cols, double percentile) {
+        synchronized (lock) {
+            ScoreTable table = tables.get(boardKey(rows, cols));
+            if (table == null || table.size == 0) {
+                return -1;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * table.size) - 1;
+            rank = Math.min(Math.max(rank, 0), table.size - 1);
+            return table.elapsed[table.ranking[rank]];
+        }
+    }
+
+    /**
+     * @return number of scores of the board size strictly better than the given one
+     */
+    public int getRank(int rows, int cols, int elapsed, int moves) {
+        synchronized (lock) {
+            ScoreTable table = tables.get(boardKey(rows, cols));
+            return table != null ? table.countBetter(elapsed, moves) : 0;
+        }
+    }
+
+    /**
+     * Writes the pending scores in the background and stops the store thread.
+     */
+    public void close() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+                closeFile();
+            }
+        });
+        executor.shutdown();
+    }
+
+    private Runnable flushTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+    }
+
+    // called with lock held
+    private void index(Score score) {
+        Integer key = boardKey(score.getRows(), score.getCols());
+        ScoreTable table = tables.get(key);
+        if (table == null) {
+            table = new ScoreTable();
+            tables.put(key, table);
+        }
+        table.insert(score.getDate(), score.getElapsed(), score.getMoves());
+    }
+
+    private void flush() {
+        List<Score> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<Score>();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty() || unwritable) {
+            return;
+        }
+
+        ByteBuffer records = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        for (Score score : batch) {
+            int start = records.position();
+            records.putLong(score.getDate());
+            records.putInt(boardKey(score.getRows(), score.getCols()));
+            records.putInt(score.getElapsed());
+            records.putInt(score.getMoves());
+            crc.reset();
+            crc.update(records.array(), start, RECORD_SIZE - 4);
+            records.putInt((int) crc.getValue());
+        }
+        try {
+            if (out == null) {
+                File file = new File(getDirectory(), SCORES_FILE);
+                boolean empty = file.length() == 0;
+                out = new FileOutputStream(file, true);
+                if (empty) {
+                    out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).array());
+                }
+            }
+            out.write(records.array());
+            out.getFD().sync();
+        } catch (IOException e) {
+            // scores are best effort, the game goes on
+            closeFile();
+        }
+    }
+
+    private int doLoad(Map<Integer, ScoreTable> read) throws IOException {
+        File file = new File(getDirectory(), SCORES_FILE);
+        if (file.length() == 0) {
+            // missing or empty, the first flush writes the header
+            return 0;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        int count = 0;
+        // end of the header and of the whole records read, 0 if the header is unknown
+        long end = 0;
+        try {
+            if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                end = HEADER_SIZE;
+            }
+            byte[] record = new byte[RECORD_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            CRC32 crc = new CRC32();
+            ScoreTable table = null;
+            int tableKey = 0;
+            while (end > 0) {
+                in.readFully(record);
+                end += RECORD_SIZE;
+                crc.reset();
+                crc.update(record, 0, RECORD_SIZE - 4);
+                if (buffer.getInt(RECORD_SIZE - 4) != (int) crc.getValue()) {
+                    continue;
+                }
+                int key = buffer.getInt(8);
+                if (table == null || key != tableKey) {
+                    table = read.get(key);
+                    if (table == null) {
+                        table = new ScoreTable();
+                        read.put(key, table);
+                    }
+                    tableKey = key;
+                }
+                table.append(buffer.getLong(0), buffer.getInt(12), buffer.getInt(16));
+                count++;
+            }
+        } catch (EOFException e) {
+            // end of the file, a torn header or last record included
+        } finally {
+            in.close();
+        }
+
+        if (end == 0) {
+            moveAside(file);
+        } else if (file.length() > end) {
+            RandomAccessFile data = new RandomAccessFile(file, "rw");
+            try {
+                data.setLength(end);
+            } finally {
+                data.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Keeps an unreadable file for inspection, replacing the one kept before, so a new file can be started.
+     */
+    private void moveAside(File file) throws IOException {
+        File corrupt = new File(getDirectory(), CORRUPT_FILE);
+        if ((corrupt.exists() && !corrupt.delete()) || !file.renameTo(corrupt)) {
+            if (!file.delete()) {
+                throw new IOException("cannot move aside " + file);
+            }
+        }
+    }
+
+    private File getDirectory() throws IOException {
+        if (directory == null) {
+            try {
+                directory = directorySupplier.call();
+            } catch (Exception e) {
+                throw new IOException("no storage directory", e);
+            }
+        }
+        return directory;
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // don't care
+            }
+            out = null;
+        }
+    }
+
+    private static int boardKey(int rows, int cols) {
+        return (rows << 16) | cols;
+    }
+
+    /**
+     * Scores of one board size in parallel arrays, plus their ranking and date order.
+     */
+    private static class ScoreTable {
+
+        long[] dates   = new long[16];
+        int[]  elapsed = new int[16];
+        int[]  moves   = new int[16];
+        // indices into the arrays above, best score first
+        int[]  ranking = new int[16];
+        // indices into the arrays above, earliest first, ties in arrival order
+        int[]  byDate  = new int[16];
+        int    size;
+
+        /**
+         * Adds a score without ranking it, {@link #rank()} must be called before queries.
+         */
+        void append(long date, int elapsedMillis, int moveCount) {
+            if (size == dates.length) {
+                int length = size * 2;
+                dates = Arrays.copyOf(dates, length);
+                elapsed = Arrays.copyOf(elapsed, length);
+                moves = Arrays.copyOf(moves, length);
+                ranking = Arrays.copyOf(ranking, length);
+                byDate = Arrays.copyOf(byDate, length);
+            }
+            dates[size] = date;
+            elapsed[size] = elapsedMillis;
+            moves[size] = moveCount;
+            size++;
+        }
+
+        void insert(long date, int elapsedMillis, int moveCount) {
+            append(date, elapsedMillis, moveCount);
+            int index = size - 1;
+            // the new score is the latest, so it goes after all equal ones
+            int rank = countBetterOrEqual(elapsedMillis, moveCount, size - 1);
+            System.arraycopy(ranking, rank, ranking, rank + 1, size - 1 - rank);
+            ranking[rank] = index;
+            // after all games of the same date or earlier, usually the end
+            int position = searchDate(date, true, size - 1);
+            System.arraycopy(byDate, position, byDate, position + 1, size - 1 - position);
+            byDate[position] = index;
+        }
+
+        /**
+         * Builds the ranking and the date order of the appended scores.
+         */
+        void rank() {
+            for (int i = 0; i < size; i++) {
+                ranking[i] = i;
+                byDate[i] = i;
+            }
+            int[] scratch = new int[size];
+            sort(ranking, scratch, 0, size);
+            sortByDate(byDate, scratch, 0, size);
+        }
+
+        Score toScore(int rows, int cols, int i) {
+            return new Score(rows, cols, dates[i], elapsed[i], moves[i]);
+        }
+
+        /**
+         * @return position in the date order of the first game at or after {@code since}
+         */
+        int firstSince(long since) {
+            return searchDate(since, false, size);
+        }
+
+        /**
+         * @param after find the first game after {@code date} instead of the first at or after it
+         * @param ordered length of the date order to search
+         */
+        private int searchDate(long date, boolean after, int ordered) {
+            int low = 0;
+            int high = ordered;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                long d = dates[byDate[mid]];
+                if (d < date || (after && d == date)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int countBetter(int elapsedMillis, int moveCount) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int i = ranking[mid];
+                if (elapsed[i] < elapsedMillis || (elapsed[i] == elapsedMillis && moves[i] < moveCount)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int countBetterOrEqual(int elapsedMillis, int moveCount, int ranked) {
+            int low = 0;
+            int high = ranked;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int i = ranking[mid];
+                if (elapsed[i] < elapsedMillis || (elapsed[i] == elapsedMillis && moves[i] <= moveCount)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int compare(int a, int b, boolean byDate) {
+            if (byDate) {
+                if (dates[a] != dates[b]) {
+                    return dates[a] < dates[b] ? -1 : 1;
+                }
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+            if (elapsed[a] != elapsed[b]) {
+                return elapsed[a] < elapsed[b] ? -1 : 1;
+            }
+            if (moves[a] != moves[b]) {
+                return moves[a] < moves[b] ? -1 : 1;
+            }
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+
+        /**
+         * Sorts the indices in [from, to) best score first.
+         */
+        void sort(int[] values, int[] scratch, int from, int to) {
+            sort(values, scratch, from, to, false);
+        }
+
+        private void sortByDate(int[] values, int[] scratch, int from, int to) {
+            sort(values, scratch, from, to, true);
+        }
+
+        /**
+         * Merge sort of the indices in [from, to), stable and without boxing.
+         */
+        private void sort(int[] values, int[] scratch, int from, int to, boolean byDate) {
+            if (to - from < 2) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            sort(values, scratch, from, mid, byDate);
+            sort(values, scratch, mid, to, byDate);
+            if (compare(values[mid - 1], values[mid], byDate) <= 0) {
+                return;
+            }
+            System.arraycopy(values, from, scratch, from, to - from);
+            int left = from;
+            int right = mid;
+            for (int k = from; k < to; k++) {
+                if (right >= to || (left < mid && compare(scratch[left], scratch[right], byDate) <= 0)) {
+                    values[k] = scratch[left++];
+                } else {
+                    values[k] = scratch[right++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package catalinc.games.memory_game;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Persists game snapshots to local storage so a game survives the process being killed.
+ * <p/>
+ * A full snapshot is written to {@code game.snapshot} (via a temporary file and a rename) and every move after it
+ * is appended as a small delta to {@code game.journal}. Both carry a generation number, so journal records left
+ * over from an older snapshot are ignored, and a CRC, so a torn last record is dropped. All the file access runs
+ * on a single background thread, in submission order.
+ */
+public class SnapshotStore {
+
+    public interface LoadCallback {
+        /**
+         * Called on the store thread.
+         *
+         * @param snapshot the last persisted state, or null if there is none or it cannot be read
+         */
+        void onLoaded(GameSnapshot snapshot);
+    }
+
+    private static final String SNAPSHOT_FILE = "game.snapshot";
+    private static final String JOURNAL_FILE  = "game.journal";
+    private static final String TEMP_SUFFIX   = ".tmp";
+
+    private final Callable<File>  directorySupplier;
+    private final ExecutorService executor;
+
+    // only touched on the store thread
+    private File             directory;
+    private long             generation;
+    private FileOutputStream journal;
+
+    /**
+     * @param directorySupplier resolves the storage directory, called on the store thread
+     */
+    public SnapshotStore(Callable<File> directorySupplier) {
+        this.directorySupplier = directorySupplier;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SnapshotStore");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Replaces the persisted state with {@code snapshot} and starts a new journal.
+     */
+    public void writeSnapshot(final GameSnapshot snapshot) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    doWriteSnapshot(GameStateCodec.encode(snapshot));
+                } catch (IOException e) {
+                    // persistence is best effort, the game goes on
+                }
+            }
+        });
+    }
+
+    /**
+     * Appends a delta encoded by {@link GameStateCodec#encodeDelta} to the journal. The array must not be modified
+     * afterwards.
+     */
+    public void appendDelta(final byte[] delta) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    doAppendDelta(delta);
+                } catch (IOException e) {
+                    // persistence is best effort, the game goes on
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the snapshot and replays the journal on top of it.
+     */
+    public void load(final LoadCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                GameSnapshot snapshot;
+                try {
+                    snapshot = doLoad();
+                } catch (IOException e) {
+                    snapshot = null;
+                }
+                callback.onLoaded(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Finishes the pending writes in the background and stops the store thread.
+     */
+    public void close() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeJournal();
+            }
+        });
+        executor.shutdown();
+    }
+
+    private File getDirectory() throws IOException {
+        if (directory == null) {
+            try {
+                directory = directorySupplier.call();
+            } catch (Exception e) {
+                throw new IOException("no storage directory", e);
+            }
+        }
+        return directory;
+    }
+
+    private void doWriteSnapshot(byte[] data) throws IOException {
+        File dir = getDirectory();
+        // wall clock keeps generations unique across runs even if the store was never loaded
+        long nextGeneration = Math.max(generation + 1, System.currentTimeMillis());
+
+        File temp = new File(dir, SNAPSHOT_FILE + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(frame(nextGeneration, data));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(dir, SNAPSHOT_FILE))) {
+            throw new IOException("cannot replace snapshot");
+        }
+        generation = nextGeneration;
+
+        // stale records would be skipped anyway, truncating just keeps the journal short
+        closeJournal();
+        journal = new FileOutputStream(new File(dir, JOURNAL_FILE), false);
+    }
+
+    private void doAppendDelta(byte[] data) throws IOException {
+        if (generation == 0) {
+            // nothing to apply the delta to
+            return;
+        }
+        if (journal == null) {
+            journal = new FileOutputStream(new File(getDirectory(), JOURNAL_FILE), true);
+        }
+        journal.write(frame(generation, data));
+    }
+
+    private GameSnapshot doLoad() throws IOException {
+        File dir = getDirectory();
+        File snapshotFile = new File(dir, SNAPSHOT_FILE);
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+        long snapshotGeneration;
+        GameSnapshot snapshot;
+        try {
+            snapshotGeneration = in.readLong();
+            byte[] data = readFramed(in, snapshotGeneration);
+            if (data == null) {
+                return null;
+            }
+            snapshot = GameStateCodec.decode(data);
+        } finally {
+            in.close();
+        }
+        generation = Math.max(generation, snapshotGeneration);
+
+        File journalFile = new File(dir, JOURNAL_FILE);
+        if (journalFile.exists()) {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                Grid grid = snapshot.getGrid();
+                while (true) {
+                    long recordGeneration = in.readLong();
+                    byte[] data = readFramed(in, recordGeneration);
+                    if (data == null) {
+                        // torn write, nothing after it can be trusted
+                        break;
+                    }
+                    if (recordGeneration == snapshotGeneration) {
+                        snapshot = GameStateCodec.applyDelta(data, grid);
+                    }
+                }
+            } catch (EOFException e) {
+                // end of the journal
+            } finally {
+                in.close();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Record layout: generation, length, payload, CRC32 of generation and payload.
+     */
+    private static byte[] frame(long generation, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(generation);
+        out.writeInt(data.length);
+        out.write(data);
+        out.writeInt(checksum(generation, data));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the rest of a record whose generation was already read.
+     *
+     * @return the payload, or null if the record is corrupt
+     */
+    private static byte[] readFramed(DataInputStream in, long generation) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 16 * Grid.MAX_TILES) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        if (in.readInt() != checksum(generation, data)) {
+            return null;
+        }
+        return data;
+    }
+
+    private static int checksum(long generation, byte[] data) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (generation >>> shift));
+        }
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                // don't care
+            }
+            journal = null;
+        }
+    }
+}
@@ -2,25 +2,162 @@ package catalinc.games.memory_game;
 
 import java.io.Serializable;
 
+/**
+ * Measures playing time on a monotonic {@link Clock}, in nanoseconds.
+ * <p/>
+ * Pausing a paused stop watch or resuming a running one does nothing. Nothing allocates once constructed.
+ */
 public class StopWatch implements Serializable {
 
-    private long elapsed;
-    private long start;
+    private static final long NANOS_PER_MILLI = 1000000;
 
+    // time accumulated before the last start or resume
+    private long    elapsed;
+    // clock reading at the last start or resume, only meaningful while running
+    private long    start;
+    private boolean running;
+    // elapsed time at the last lap
+    private long    lapMark;
+
+    // not serialized, deserialized stop watches use the system clock
+    private transient Clock clock;
+
+    public StopWatch() {
+        this(Clock.SYSTEM);
+    }
+
+    public StopWatch(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a paused stop watch showing {@code elapsedNanos}.
+     */
+    public StopWatch(long elapsedNanos, Clock clock) {
+        this.elapsed = elapsedNanos;
+        this.lapMark = elapsedNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Resets the time and starts running.
+     */
     public void start() {
         elapsed = 0;
-        start = System.currentTimeMillis();
+        lapMark = 0;
+        start = now();
+        running = true;
     }
 
     public void pause() {
-        elapsed += System.currentTimeMillis() - start;
+        if (running) {
+            elapsed += now() - start;
+            running = false;
+        }
     }
 
     public void resume() {
-        start = System.currentTimeMillis();
+        if (!running) {
+            start = now();
+            running = true;
+        }
     }
 
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Makes this stop watch a copy of {@code other}, keeping its own clock.
+     */
+    public void set(StopWatch other) {
+        elapsed = other.elapsed;
+        start = other.start;
+        running = other.running;
+        lapMark = other.lapMark;
+    }
+
+    public StopWatch copy() {
+        return copy(clock);
+    }
+
+    /**
+     * @return a copy reading the time from {@code clock}, which must be the same time base as this clock
+     */
+    public StopWatch copy(Clock clock) {
+        StopWatch copy = new StopWatch(elapsed, clock);
+        copy.start = start;
+        copy.running = running;
+        copy.lapMark = lapMark;
+        return copy;
+    }
+
+    public long elapsedNanos() {
+        return running ? now() - start + elapsed : elapsed;
+    }
+
+    /**
+     * @return elapsed time in milliseconds
+     */
     public long elapsed() {
-        return  System.currentTimeMillis() - start + elapsed;
+        return elapsedNanos() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return time of the current lap so far, without ending it
+     */
+    public long split() {
+        return elapsedNanos() - lapMark;
+    }
+
+    /**
+     * Ends the current lap and starts the next one.
+     *
+     * @return duration of the lap that ended, in nanoseconds
+     */
+    public long lap() {
+        long now = elapsedNanos();
+        long lap = now - lapMark;
+        lapMark = now;
+        return lap;
+    }
+
+    /**
+     * Writes {@code millis} as {@code m:ss}, or {@code h:mm:ss} from one hour on, without allocating.
+     *
+     * @param dest at least 9 chars, enough for up to 99 hours
+     * @return number of chars written
+     */
+    public static int format(long millis, char[] dest) {
+        long seconds = Math.max(millis, 0) / 1000;
+        long hours = Math.min(seconds / 3600, 99);
+        int minutes = (int) (seconds / 60 % 60);
+        int secs = (int) (seconds % 60);
+
+        int n = 0;
+        if (hours > 0) {
+            n = writeNumber(hours, dest, n);
+            dest[n++] = ':';
+            dest[n++] = (char) ('0' + minutes / 10);
+            dest[n++] = (char) ('0' + minutes % 10);
+        } else {
+            n = writeNumber(minutes, dest, n);
+        }
+        dest[n++] = ':';
+        dest[n++] = (char) ('0' + secs / 10);
+        dest[n++] = (char) ('0' + secs % 10);
+        return n;
+    }
+
+    private static int writeNumber(long value, char[] dest, int offset) {
+        if (value >= 10) {
+            offset = writeNumber(value / 10, dest, offset);
+        }
+        dest[offset] = (char) ('0' + value % 10);
+        return offset + 1;
+    }
+
+    private long now() {
+        return clock != null ? clock.nanoTime() : System.nanoTime();
     }
 }
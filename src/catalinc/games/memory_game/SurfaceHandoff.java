@@ -0,0 +1,118 @@
+package catalinc.games.memory_game;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the drawing surface over between the UI thread, which is told when it is created and destroyed, and the
+ * thread drawing on it, which outlives any one surface.
+ * <p/>
+ * Before every frame the drawing thread checks {@link #isHeld()}. Once the surface has been detached it frees what
+ * is bound to the surface, calls {@link #release()}, and waits in {@link #acquire()} for the next one.
+ * {@link #detach(Thread)} only returns after the release, so the surface is never used once the UI thread is done
+ * with it.
+ */
+public class SurfaceHandoff {
+
+    private final Object lock;
+    // guarded by lock
+    private boolean running;
+    private boolean attached;
+    private boolean inUse;
+
+    public SurfaceHandoff() {
+        lock = new Object();
+    }
+
+    /**
+     * Lets {@link #acquire()} return false once not running.
+     */
+    public void setRunning(boolean running) {
+        synchronized (lock) {
+            this.running = running;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * UI thread, the surface was created.
+     */
+    public void attach() {
+        synchronized (lock) {
+            attached = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * UI thread, the surface is being destroyed. Wakes the drawing thread up in case it is parked, and returns once
+     * it no longer uses the surface.
+     */
+    public void detach(Thread drawingThread) {
+        synchronized (lock) {
+            attached = false;
+            LockSupport.unpark(drawingThread);
+            while (inUse) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    // the surface must not be used once this returns, keep waiting
+                }
+            }
+        }
+    }
+
+    /**
+     * Drawing thread.
+     *
+     * @return true if the surface is held and still attached, so it can be drawn on
+     */
+    public boolean isHeld() {
+        synchronized (lock) {
+            return attached && inUse;
+        }
+    }
+
+    /**
+     * Drawing thread.
+     *
+     * @return true if the surface is held, attached or not
+     */
+    public boolean isInUse() {
+        synchronized (lock) {
+            return inUse;
+        }
+    }
+
+    /**
+     * Drawing thread, gives the surface back. Must also be called when the drawing thread dies, or the UI thread
+     * would wait forever.
+     */
+    public void release() {
+        synchronized (lock) {
+            inUse = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Drawing thread, waits until a surface is attached and holds it.
+     *
+     * @return false if stopped meanwhile
+     */
+    public boolean acquire() {
+        synchronized (lock) {
+            while (running && !attached) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    // don't care
+                }
+            }
+            if (!running) {
+                return false;
+            }
+            inUse = true;
+            return true;
+        }
+    }
+}
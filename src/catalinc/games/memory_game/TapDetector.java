@@ -0,0 +1,58 @@
+package catalinc.games.memory_game;
+
+/**
+ * Tells taps on tiles apart from scrolls and pinches. A tap is a single finger lifted close to where it went down,
+ * however long it was held and however soon it follows the previous tap, so quick flips of neighbouring tiles are
+ * never taken for a double tap.
+ * <p/>
+ * Fed from the UI thread, not thread safe.
+ */
+public class TapDetector {
+
+    private final float slopSquare;
+
+    private boolean tracking;
+    private float   downX;
+    private float   downY;
+
+    /**
+     * @param touchSlop distance in pixels a finger may wander before the touch is a scroll
+     */
+    public TapDetector(float touchSlop) {
+        this.slopSquare = touchSlop * touchSlop;
+    }
+
+    public void onDown(float x, float y) {
+        tracking = true;
+        downX = x;
+        downY = y;
+    }
+
+    public void onMove(float x, float y) {
+        if (tracking && !isNear(x, y)) {
+            tracking = false;
+        }
+    }
+
+    /**
+     * A second finger went down or the gesture was taken away, the touch is no tap.
+     */
+    public void cancel() {
+        tracking = false;
+    }
+
+    /**
+     * @return true if the touch ending here is a tap
+     */
+    public boolean onUp(float x, float y) {
+        boolean tap = tracking && isNear(x, y);
+        tracking = false;
+        return tap;
+    }
+
+    private boolean isNear(float x, float y) {
+        float dx = x - downX;
+        float dy = y - downY;
+        return dx * dx + dy * dy <= slopSquare;
+    }
+}
@@ -2,6 +2,9 @@ package catalinc.games.memory_game;
 
 import java.io.Serializable;
 
+/**
+ * Value of a single {@link Grid} cell. Changes to a tile are not reflected in the grid it was read from.
+ */
 public class Tile implements Serializable {
 
     public static final int STATE_HIDDEN   = 0;
@@ -0,0 +1,25 @@
+package catalinc.games.memory_game;
+
+/**
+ * Look of the faces of the tile pairs, a color and a glyph drawn on top of it. Pairs are numbered from 0.
+ */
+public interface TileFaces {
+
+    int GLYPH_NONE     = 0;
+    int GLYPH_CIRCLE   = 1;
+    int GLYPH_SQUARE   = 2;
+    int GLYPH_DIAMOND  = 3;
+    int GLYPH_TRIANGLE = 4;
+    int GLYPH_RING     = 5;
+    int GLYPH_COUNT    = 6;
+
+    /**
+     * @return opaque color of the face, as an ARGB int
+     */
+    int getColor(int pair);
+
+    /**
+     * @return one of the {@code GLYPH_} constants
+     */
+    int getGlyph(int pair);
+}
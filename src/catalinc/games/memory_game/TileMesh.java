@@ -0,0 +1,187 @@
+package catalinc.games.memory_game;
+
+/**
+ * Colored triangles of the tiles of a {@link Frame}, as drawn by {@link GlTileRenderer} in a single call.
+ * <p/>
+ * Faces take the place and size {@link Frame#faceLeft(int)} and friends give them, like the canvas sprites, and
+ * mirror the glyphs drawn by {@link TilePalette}; circles are approximated by polygons. Tiles come in window order,
+ * faded out tiles are left out. The vertex array grows with the window and is reused, so building allocates
+ * nothing once it is large enough.
+ */
+public class TileMesh {
+
+    // x, y, r, g, b, a
+    static final int FLOATS_PER_VERTEX = 6;
+
+    private static final int SEGMENTS          = 12;
+    // a face with a ring, the largest tile
+    private static final int MAX_TILE_VERTICES = 6 + SEGMENTS * 6;
+
+    private static final float[] COS = new float[SEGMENTS + 1];
+    private static final float[] SIN = new float[SEGMENTS + 1];
+
+    static {
+        for (int i = 0; i <= SEGMENTS; i++) {
+            COS[i] = (float) Math.cos(2 * Math.PI * i / SEGMENTS);
+            SIN[i] = (float) Math.sin(2 * Math.PI * i / SEGMENTS);
+        }
+    }
+
+    private final TileFaces faces;
+    private final int       hiddenTileColor;
+    private final int       glyphColor;
+    private final int       fadeTicks;
+
+    private float[] vertices;
+    private int     vertexCount;
+
+    /**
+     * @param fadeTicks length of the solved tiles fade, in ticks
+     */
+    public TileMesh(TileFaces faces, int hiddenTileColor, int glyphColor, int fadeTicks) {
+        this.faces = faces;
+        this.hiddenTileColor = hiddenTileColor;
+        this.glyphColor = glyphColor;
+        this.fadeTicks = fadeTicks;
+        vertices = new float[0];
+    }
+
+    /**
+     * @param interpolation fraction of a tick elapsed since the frame was produced, between 0 and 1
+     */
+    public void build(Frame frame, float interpolation) {
+        int floats = frame.size * MAX_TILE_VERTICES * FLOATS_PER_VERTEX;
+        if (vertices.length < floats) {
+            vertices = new float[floats];
+        }
+        vertexCount = 0;
+
+        float width = frame.faceWidth();
+        float height = frame.faceHeight();
+        // only the visible window is in the frame
+        for (int i = 0; i < frame.size; i++) {
+            int cell = frame.cells[i];
+            int alpha = Frame.faceAlpha(cell, interpolation, fadeTicks);
+            if (alpha == 0) {
+                continue;
+            }
+            float left = frame.faceLeft(i);
+            float top = frame.faceTop(i);
+            if (Grid.stateOf(cell) == Tile.STATE_HIDDEN) {
+                addQuad(left, top, left + width, top + height, hiddenTileColor, 1);
+            } else {
+                addFace(Grid.colorOf(cell), left, top, left + width, top + height, alpha / 255f);
+            }
+        }
+    }
+
+    /**
+     * @return x, y, r, g, b and alpha of every vertex, colors between 0 and 1; only the first
+     * {@link #getVertexCount()} vertices are valid
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return number of vertices of a face with the glyph
+     */
+    static int faceVertices(int glyph) {
+        switch (glyph) {
+            case TileFaces.GLYPH_CIRCLE:
+                return 6 + SEGMENTS * 3;
+            case TileFaces.GLYPH_SQUARE:
+            case TileFaces.GLYPH_DIAMOND:
+                return 6 + 6;
+            case TileFaces.GLYPH_TRIANGLE:
+                return 6 + 3;
+            case TileFaces.GLYPH_RING:
+                return 6 + SEGMENTS * 6;
+            case TileFaces.GLYPH_NONE:
+            default:
+                return 6;
+        }
+    }
+
+    private void addFace(int pair, float left, float top, float right, float bottom, float alpha) {
+        addQuad(left, top, right, bottom, faces.getColor(pair), alpha);
+
+        float cx = (left + right) / 2;
+        float cy = (top + bottom) / 2;
+        float r = Math.min(right - left, bottom - top) / 4;
+        int color = glyphColor;
+        switch (faces.getGlyph(pair)) {
+            case TileFaces.GLYPH_CIRCLE:
+                for (int s = 0; s < SEGMENTS; s++) {
+                    addTriangle(cx, cy,
+                                cx + r * COS[s], cy + r * SIN[s],
+                                cx + r * COS[s + 1], cy + r * SIN[s + 1], color, alpha);
+                }
+                break;
+            case TileFaces.GLYPH_SQUARE:
+                addQuad(cx - r, cy - r, cx + r, cy + r, color, alpha);
+                break;
+            case TileFaces.GLYPH_DIAMOND:
+                addTriangle(cx, cy - r, cx + r, cy, cx - r, cy, color, alpha);
+                addTriangle(cx - r, cy, cx + r, cy, cx, cy + r, color, alpha);
+                break;
+            case TileFaces.GLYPH_TRIANGLE:
+                addTriangle(cx, cy - r, cx + r, cy + r, cx - r, cy + r, color, alpha);
+                break;
+            case TileFaces.GLYPH_RING:
+                float stroke = Math.max(r / 3, 1);
+                float outer = r + stroke / 2;
+                float inner = r - stroke / 2;
+                for (int s = 0; s < SEGMENTS; s++) {
+                    float ox0 = cx + outer * COS[s], oy0 = cy + outer * SIN[s];
+                    float ox1 = cx + outer * COS[s + 1], oy1 = cy + outer * SIN[s + 1];
+                    float ix0 = cx + inner * COS[s], iy0 = cy + inner * SIN[s];
+                    float ix1 = cx + inner * COS[s + 1], iy1 = cy + inner * SIN[s + 1];
+                    addTriangle(ox0, oy0, ox1, oy1, ix0, iy0, color, alpha);
+                    addTriangle(ix0, iy0, ox1, oy1, ix1, iy1, color, alpha);
+                }
+                break;
+            case TileFaces.GLYPH_NONE:
+            default:
+        }
+    }
+
+    private void addQuad(float left, float top, float right, float bottom, int color, float alpha) {
+        addTriangle(left, top, right, top, left, bottom, color, alpha);
+        addTriangle(left, bottom, right, top, right, bottom, color, alpha);
+    }
+
+    private void addTriangle(float x0, float y0, float x1, float y1, float x2, float y2, int color, float alpha) {
+        addVertex(x0, y0, color, alpha);
+        addVertex(x1, y1, color, alpha);
+        addVertex(x2, y2, color, alpha);
+    }
+
+    private void addVertex(float x, float y, int color, float alpha) {
+        int i = vertexCount * FLOATS_PER_VERTEX;
+        float[] v = vertices;
+        v[i] = x;
+        v[i + 1] = y;
+        v[i + 2] = red(color);
+        v[i + 3] = green(color);
+        v[i + 4] = blue(color);
+        v[i + 5] = alpha;
+        vertexCount++;
+    }
+
+    static float red(int color) {
+        return ((color >> 16) & 0xff) / 255f;
+    }
+
+    static float green(int color) {
+        return ((color >> 8) & 0xff) / 255f;
+    }
+
+    static float blue(int color) {
+        return (color & 0xff) / 255f;
+    }
+}
@@ -0,0 +1,118 @@
+package catalinc.games.memory_game;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Gives every tile pair a distinct look, a color and glyph combination, and renders the tile faces.
+ * <p/>
+ * Pairs are numbered from 0. The first pairs use the plain base colors; after that every glyph is combined with
+ * every base color, and once those run out the colors are generated by rotating the hue by the golden angle.
+ */
+public class TilePalette implements TileFaces {
+
+    // based on Solarized color palette
+    private static final int[] BASE_COLORS = {Color.parseColor("#93a1a1"),
+                                              Color.parseColor("#eee8d5"),
+                                              Color.parseColor("#b58900"),
+                                              Color.parseColor("#cb4b16"),
+                                              Color.parseColor("#dc322f"),
+                                              Color.parseColor("#d33682"),
+                                              Color.parseColor("#6c71c4"),
+                                              Color.parseColor("#268bd2"),
+                                              Color.parseColor("#2aa198"),
+                                              Color.parseColor("#859900")};
+
+    private static final int   PAIRS_PER_ROUND = BASE_COLORS.length * GLYPH_COUNT;
+    private static final float GOLDEN_ANGLE    = 137.50776f;
+
+    private final Paint   mFacePaint;
+    private final Paint   mGlyphPaint;
+    private final Path    mPath;
+    private final RectF   mRect;
+    private final float[] mHsv;
+
+    /**
+     * @param glyphColor color glyphs are drawn with, should contrast with all the tile colors
+     */
+    public TilePalette(int glyphColor) {
+        mFacePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mGlyphPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mGlyphPaint.setColor(glyphColor);
+        mPath = new Path();
+        mRect = new RectF();
+        mHsv = new float[3];
+    }
+
+    @Override
+    public int getColor(int pair) {
+        int round = pair / PAIRS_PER_ROUND;
+        int slot = pair % BASE_COLORS.length;
+        if (round == 0) {
+            return BASE_COLORS[slot];
+        }
+        Color.colorToHSV(BASE_COLORS[slot], mHsv);
+        mHsv[0] = (mHsv[0] + round * GOLDEN_ANGLE) % 360;
+        mHsv[1] = 0.45f + 0.5f * ((round * 3) % 5) / 4;
+        mHsv[2] = 0.6f + 0.4f * ((round * 2) % 3) / 2;
+        return Color.HSVToColor(mHsv);
+    }
+
+    @Override
+    public int getGlyph(int pair) {
+        return (pair % PAIRS_PER_ROUND) / BASE_COLORS.length;
+    }
+
+    /**
+     * Renders the face of the pair, a rounded rectangle in the pair color with its glyph on top.
+     */
+    public Bitmap createFace(int pair, int width, int height) {
+        Bitmap face = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(face);
+
+        mFacePaint.setColor(getColor(pair));
+        mRect.set(0, 0, width, height);
+        canvas.drawRoundRect(mRect, 2, 2, mFacePaint);
+
+        float cx = width / 2f;
+        float cy = height / 2f;
+        float r = Math.min(width, height) / 4f;
+        mGlyphPaint.setStyle(Paint.Style.FILL);
+        mPath.reset();
+        switch (getGlyph(pair)) {
+            case GLYPH_CIRCLE:
+                canvas.drawCircle(cx, cy, r, mGlyphPaint);
+                break;
+            case GLYPH_SQUARE:
+                canvas.drawRect(cx - r, cy - r, cx + r, cy + r, mGlyphPaint);
+                break;
+            case GLYPH_DIAMOND:
+                mPath.moveTo(cx, cy - r);
+                mPath.lineTo(cx + r, cy);
+                mPath.lineTo(cx, cy + r);
+                mPath.lineTo(cx - r, cy);
+                mPath.close();
+                canvas.drawPath(mPath, mGlyphPaint);
+                break;
+            case GLYPH_TRIANGLE:
+                mPath.moveTo(cx, cy - r);
+                mPath.lineTo(cx + r, cy + r);
+                mPath.lineTo(cx - r, cy + r);
+                mPath.close();
+                canvas.drawPath(mPath, mGlyphPaint);
+                break;
+            case GLYPH_RING:
+                mGlyphPaint.setStyle(Paint.Style.STROKE);
+                mGlyphPaint.setStrokeWidth(Math.max(r / 3, 1));
+                canvas.drawCircle(cx, cy, r, mGlyphPaint);
+                break;
+            case GLYPH_NONE:
+            default:
+        }
+        return face;
+    }
+}
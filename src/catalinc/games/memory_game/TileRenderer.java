@@ -0,0 +1,44 @@
+package catalinc.games.memory_game;
+
+/**
+ * Draws {@link Frame}s onto the game surface. All methods are called on the render thread.
+ */
+public interface TileRenderer {
+
+    /**
+     * @return false if this renderer cannot run here, another one should be used
+     */
+    boolean init();
+
+    /**
+     * Forces the next frame to be fully redrawn.
+     */
+    void invalidate();
+
+    /**
+     * Works out what differs between {@code frame} and what is on screen.
+     *
+     * @return false if the frame is already on screen
+     */
+    boolean prepare(Frame frame);
+
+    /**
+     * Draws the frame prepared last.
+     *
+     * @param interpolation fraction of a tick elapsed since the frame was produced, between 0 and 1
+     * @return time spent drawing in nanoseconds, without waiting for a buffer; -1 if the surface was not ready,
+     * the renderer is then invalidated
+     */
+    long draw(Frame frame, float interpolation);
+
+    /**
+     * Called when the surface is destroyed. Frees what is bound to it, keeping what can be reused;
+     * {@link #init()} is called again before the next frame.
+     */
+    void detach();
+
+    /**
+     * Frees the resources, the renderer is not used afterwards.
+     */
+    void release();
+}
@@ -0,0 +1,176 @@
+package catalinc.games.memory_game;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * Pre-rendered tile bitmaps for one tile size, evicted least recently used first once they exceed a memory budget.
+ * <p/>
+ * Hidden tiles all share one sprite; selected and solved tiles of a pair share its face. Sprites are indexed
+ * directly by key and the LRU order is kept in two int arrays, so lookups don't allocate.
+ */
+public class TileSpriteCache {
+
+    private static final int HIDDEN_KEY = 0;
+    private static final int NONE       = -1;
+
+    private final TilePalette mTilePalette;
+    private final Paint       mHiddenTilePaint;
+    private final RectF       mRect;
+    private final long        mMaxBytes;
+
+    private Bitmap[] mSprites;
+    // LRU list, most recently used at the head
+    private int[]    mPrev;
+    private int[]    mNext;
+    private int      mHead;
+    private int      mTail;
+    private long     mBytes;
+    private int      mEvictions;
+
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * @param maxBytes memory budget; the last sprite asked for is always kept, even if larger
+     */
+    public TileSpriteCache(TilePalette tilePalette, int hiddenTileColor, long maxBytes) {
+        mTilePalette = tilePalette;
+        mHiddenTilePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mHiddenTilePaint.setColor(hiddenTileColor);
+        mRect = new RectF();
+        mMaxBytes = maxBytes;
+
+        mSprites = new Bitmap[0];
+        mPrev = new int[0];
+        mNext = new int[0];
+        mHead = NONE;
+        mTail = NONE;
+    }
+
+    public int getTileWidth() {
+        return mWidth;
+    }
+
+    public int getTileHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Changes the sprite size, dropping all the sprites if it differs.
+     */
+    public void setTileSize(int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            clear();
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    /**
+     * @param pair  tile color index
+     * @param state one of the {@link Tile} states
+     * @return the sprite, rendered on first use; null if the tile size is empty
+     */
+    public Bitmap getSprite(int pair, int state) {
+        if (mWidth <= 0 || mHeight <= 0) {
+            return null;
+        }
+        int key = state == Tile.STATE_HIDDEN ? HIDDEN_KEY : pair + 1;
+        if (key >= mSprites.length) {
+            grow(key + 1);
+        }
+
+        Bitmap sprite = mSprites[key];
+        if (sprite != null) {
+            unlink(key);
+        } else {
+            sprite = key == HIDDEN_KEY ? renderHidden() : mTilePalette.createFace(pair, mWidth, mHeight);
+            long bytes = sprite.getByteCount();
+            while (mTail != NONE && mBytes + bytes > mMaxBytes) {
+                evict(mTail);
+            }
+            mSprites[key] = sprite;
+            mBytes += bytes;
+        }
+        linkFirst(key);
+        return sprite;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return number of sprites evicted to stay within the budget
+     */
+    public int getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * Releases all the sprites.
+     */
+    public void clear() {
+        while (mTail != NONE) {
+            int key = mTail;
+            unlink(key);
+            mSprites[key].recycle();
+            mSprites[key] = null;
+        }
+        mBytes = 0;
+    }
+
+    private Bitmap renderHidden() {
+        Bitmap sprite = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        mRect.set(0, 0, mWidth, mHeight);
+        new Canvas(sprite).drawRoundRect(mRect, 2, 2, mHiddenTilePaint);
+        return sprite;
+    }
+
+    private void evict(int key) {
+        unlink(key);
+        Bitmap sprite = mSprites[key];
+        mSprites[key] = null;
+        mBytes -= sprite.getByteCount();
+        sprite.recycle();
+        mEvictions++;
+    }
+
+    private void linkFirst(int key) {
+        mPrev[key] = NONE;
+        mNext[key] = mHead;
+        if (mHead != NONE) {
+            mPrev[mHead] = key;
+        } else {
+            mTail = key;
+        }
+        mHead = key;
+    }
+
+    private void unlink(int key) {
+        int prev = mPrev[key];
+        int next = mNext[key];
+        if (prev != NONE) {
+            mNext[prev] = next;
+        } else {
+            mHead = next;
+        }
+        if (next != NONE) {
+            mPrev[next] = prev;
+        } else {
+            mTail = prev;
+        }
+    }
+
+    private void grow(int minLength) {
+        int length = Math.max(minLength, mSprites.length * 2);
+        mSprites = Arrays.copyOf(mSprites, length);
+        mPrev = Arrays.copyOf(mPrev, length);
+        mNext = Arrays.copyOf(mNext, length);
+    }
+}